@@ -1,67 +1,123 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashSet;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Gitlet class.
  * @author Yuqiong Ji.
  */
-public class Command implements Serializable {
+public class Command {
 
     /** Current Working Directory. */
     static final File CWD = new File(".");
     /** Git Directory. */
     static final File GIT_FOLDER = new File(".gitlet");
-    /** Current staging Directory. */
-    static final File STAGE_FOLDER = new File(".gitlet/staging");
     /** Current blobs Directory. */
     static final File BLOB_FOLDER = new File(".gitlet/blobs");
+    /** Commit records Directory. */
+    static final File COMMIT_FOLDER = new File(".gitlet/commits");
+    /** Tree records Directory. */
+    static final File TREE_FOLDER = new File(".gitlet/trees");
+    /** Packed blobs Directory. */
+    static final File PACK_FOLDER = new File(".gitlet/packs");
+    /** Commit-graph file. */
+    static final File GRAPH_FILE = new File(".gitlet/commit-graph");
+    /** Commit message index Directory. */
+    static final File FIND_FOLDER = new File(".gitlet/find");
+    /** Branch records Directory. */
+    static final File REFS_FOLDER = new File(".gitlet/refs");
+    /** Current branch and head record. */
+    static final File HEAD_FILE = new File(".gitlet/HEAD");
+    /** Staging index record. */
+    static final File INDEX_FILE = new File(".gitlet/index");
+    /** Write-ahead journal. */
+    static final File JOURNAL_FILE = new File(".gitlet/journal");
 
-    /** Constructor.*/
+    /** Constructor. Reads only the HEAD record, the staging index and
+     *  the head commit; everything else is loaded on demand. */
     public Command() {
-        _branch = null;
-        _head = null;
-        _branchCommits = new HashMap<String, LinkedList<Commit>>();
-        _allCommits = new HashMap<>();
-        _remove = new HashSet<>();
-        _staging = new HashSet<>();
-        _rmTmp = new HashSet<>();
+        this(new ObjectStore(COMMIT_FOLDER, TREE_FOLDER, BLOB_FOLDER,
+                PACK_FOLDER, GRAPH_FILE));
+    }
+
+    /** Constructor sharing STORE, and the records it has already
+     *  loaded, with earlier commands.
+     *  @param store ObjectStore */
+    Command(ObjectStore store) {
+        _journal = new Journal(JOURNAL_FILE);
+        if (GIT_FOLDER.isDirectory()) {
+            _journal.recover();
+        }
+        _store = store;
+        _refs = new Refs(REFS_FOLDER, HEAD_FILE);
+        _messages = new MessageIndex(FIND_FOLDER);
+        _index = StagingArea.load(INDEX_FILE);
+        _branch = _refs.currentBranch();
+        _head = _branch == null ? null
+                : _store.readCommit(_refs.branchHead(_branch));
+        _remove = _index.removed();
+        _staging = _index.staged();
+        _rmTmp = _index.untracked();
+        mergedcommand = _index.merged();
+    }
+
+    /** Write back the records modified by the command just run. */
+    public void save() {
+        if (!GIT_FOLDER.isDirectory()) {
+            return;
+        }
+        if (_head != null) {
+            _refs.setCurrentBranch(_branch);
+            _refs.setBranchHead(_branch, _head.getindex());
+        }
+        _index.setMerged(mergedcommand);
+        _store.journal(_journal);
+        _refs.save(_journal);
+        _index.save(INDEX_FILE, _journal);
+        _journal.commit();
     }
 
     /** init command.*/
     public void init() throws IOException {
         if (!Files.exists(Paths.get(".gitlet"))) {
             GIT_FOLDER.mkdir();
-            STAGE_FOLDER.mkdir();
             BLOB_FOLDER.mkdir();
+            COMMIT_FOLDER.mkdir();
+            TREE_FOLDER.mkdir();
+            REFS_FOLDER.mkdir();
             Commit commit = new Commit();
+            commit.setindex(_store);
             _head = commit;
             _branch = "master";
-
-            if (_branchCommits.get(_branch) == null) {
-                LinkedList<Commit> commitlist = new LinkedList<>();
-                commitlist.add(commit);
-                _branchCommits.put(_branch, commitlist);
-            } else {
-                _branchCommits.get(_branch).add(commit);
-            }
-            _allCommits.put(commit.getindex(), commit);
+            _refs.setBranchHead(_branch, commit.getindex());
+            _store.writeCommit(commit);
+            _messages.add(commit);
 
         } else {
-            System.out.println("A Gitlet version-control system"
+            throw Utils.error("A Gitlet version-control system"
                     + " already exists in the current directory.");
-            System.exit(0);
         }
     }
 
@@ -71,45 +127,65 @@ public class Command implements Serializable {
         add(filename, null);
     }
 
+    /** add command: stage every file, directory or glob pattern named in
+     *  ARGS[1..], hashing the files that changed on the worker pool.
+     *  @param args String[] */
+    public void add(String[] args) {
+        if (args.length < 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        TreeSet<String> files = new TreeSet<>();
+        for (int i = 1; i < args.length; i += 1) {
+            List<String> matched = WorkTree.expand(args[i]);
+            if (matched.isEmpty()) {
+                throw Utils.error("File does not exist.");
+            }
+            files.addAll(matched);
+        }
+        TreeMap<String, String> ids = WorkTree.hash(files, _index, _store);
+        for (Map.Entry<String, String> file : ids.entrySet()) {
+            stage(file.getKey(), file.getValue());
+        }
+    }
+
     /** add method with targetfile.
      * @param filename String
      * @param targetFiles TreeMap<String, String>*/
     public void add(String filename, TreeMap<String, String> targetFiles) {
-        String[] namelst = filename.split("/");
-        String name = namelst[namelst.length - 1];
+        String name = WorkTree.normalize(filename);
 
-        File newFile = null;
+        String code;
         if (targetFiles == null) {
-            if (!(new File(filename)).exists()) {
-                System.out.println("File does not exist.");
-                System.exit(0);
-                return;
+            File file = new File(name);
+            if (!file.isFile()) {
+                throw Utils.error("File does not exist.");
+            }
+            FileStat stat = FileStat.of(file);
+            code = _index.cachedId(name, stat);
+            if (code == null || (!code.equals(_head.getBlob().get(name))
+                    && !_store.hasBlob(code))) {
+                code = _store.writeBlob(file);
+                _index.cache(name, stat, code);
             }
-            newFile = new File(filename);
         } else {
-            newFile = Utils.join(BLOB_FOLDER, targetFiles.get(filename));
-            _head.getTrackedFiles().add(name);
+            code = targetFiles.get(filename);
         }
-        String version1 = Utils.readContentsAsString(newFile);
-        File oldFile = Utils.join(STAGE_FOLDER, name);
+        stage(name, code);
+    }
 
+    /** Stage version CODE of file NAME, unless it is the version in
+     *  the current commit.
+     * @param name String
+     * @param code String */
+    private void stage(String name, String code) {
         if (_remove.contains(name)) {
             _remove.remove(name);
         }
 
-        _staging.add(name);
-        Utils.writeContents(oldFile, Utils.readContents(newFile));
-
-        if (_head.getBlob().size() > 0) {
-            String file = _head.getBlob().get(name);
-            if (file != null) {
-                File temp = Utils.join(BLOB_FOLDER, file);
-                String version2 = Utils.readContentsAsString(temp);
-                if (version1.equals(version2)) {
-                    _staging.remove(name);
-                    oldFile.delete();
-                }
-            }
+        if (code.equals(_head.getBlob().get(name))) {
+            _staging.remove(name);
+        } else {
+            _staging.put(name, code);
         }
     }
 
@@ -117,8 +193,7 @@ public class Command implements Serializable {
      * @param msg String[]*/
     public void commit(String[] msg) {
         if (msg.length != 2 || msg[1].equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw Utils.error("Please enter a commit message.");
         } else {
             commit(msg[1]);
         }
@@ -128,161 +203,193 @@ public class Command implements Serializable {
      * @param msg String*/
     public void commit(String msg) {
         if (_staging.size() == 0 && _remove.size() == 0) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
-            return;
+            throw Utils.error("No changes added to the commit.");
         }
         commit(new Commit(_head, msg));
     }
 
     /** commit command.
      * @param commit Commit*/
-    @SuppressWarnings("unchecked")
     public void commit(Commit commit) {
-        HashSet<String> tempStage = (HashSet<String>) _staging.clone();
-        for (String iter : tempStage) {
-            commit.getTrackedFiles().add(iter);
-            File from = Utils.join(STAGE_FOLDER, iter);
-            String content = Utils.readContentsAsString(from);
-            String code = Utils.sha1(content);
-            commit.getBlob().put(iter, code);
-            File to = Utils.join(BLOB_FOLDER, code);
-            Utils.writeContents(to, Utils.readContents(from));
-            _staging.remove(iter);
-            from.delete();
+        for (Map.Entry<String, String> iter : _staging.entrySet()) {
+            commit.track(iter.getKey(), iter.getValue());
         }
+        _staging.clear();
         for (String s : _rmTmp) {
-            commit.getTrackedFiles().remove(s);
-            commit.getBlob().remove(s);
+            commit.untrack(s);
         }
         _rmTmp.clear();
 
         for (String s : _remove) {
-            commit.getBlob().remove(s);
-            _remove.remove(s);
-        }
-        commit.setindex();
-        if (_branchCommits.get(_branch) == null) {
-            LinkedList<Commit> com = new LinkedList<>();
-            com.add(commit);
-            _branchCommits.put(_branch, com);
-        } else {
-            _branchCommits.get(_branch).add(commit);
+            commit.untrack(s);
         }
-        _allCommits.put(commit.getindex(), commit);
+        _remove.clear();
+        commit.setindex(_store);
+        _store.writeCommit(commit);
+        _messages.add(commit);
+        _refs.setBranchHead(_branch, commit.getindex());
         _head = commit;
     }
 
     /** remove command.
      * @param filename String*/
     public void remove(String filename) {
-        String[] namelst = filename.split("/");
-        String name = namelst[namelst.length - 1];
+        String name = WorkTree.normalize(filename);
         _remove.add(name);
-        if (!_staging.contains(name)
+        if (!_staging.containsKey(name)
                 && !_head.getTrackedFiles().contains(name)) {
             System.out.println("No reason to remove the file.");
             return;
         }
-        if (_staging.contains(name)) {
-            _staging.remove(name);
-            File file = Utils.join(STAGE_FOLDER, name);
-            file.delete();
-        }
+        _staging.remove(name);
         if (_head.getTrackedFiles().contains(name)) {
             _rmTmp.add(name);
-            File f = new File(filename);
-            if (f.exists()) {
-                f.delete();
-            }
+            WorkTree.delete(name);
         }
     }
 
-    /** display information about each commit backwards. */
-    public void log() {
-        String output = "";
-        Commit pointer = _head;
-
-        while (pointer != null) {
-            output += "=== \n";
-            output += "commit " + pointer.getindex() + "\n";
-            if (pointer.getParent() != null
-                    && pointer.getParent().size() == 2) {
-                output += "Merge: ";
-                output += pointer.getParent().get(0).
-                        getindex().substring(0, 7);
-                output += " ";
-                output += pointer.getParent().get(1).
-                        getindex().substring(0, 7);
-                output += "\n";
+    /** display information about each commit backwards, following
+     *  first parents from the head, as it is walked.
+     * @param args log [-n COUNT] [--since DATE] */
+    public void log(String[] args) {
+        long[] limits = logLimits(args);
+        PrintWriter out = output();
+        String id = _head.getindex();
+        for (long n = 0; id != null && n < limits[0]; n += 1) {
+            if (_store.timestamp(id) < limits[1]) {
+                break;
             }
+            Commit pointer = _store.readCommit(id);
+            logEntry(out, "=== ", pointer);
+            id = pointer.getParent() == null ? null
+                    : pointer.getParent().getFirst();
+        }
+        out.println();
+        out.flush();
+    }
 
-            output += "Date: " + pointer.getTime() + "\n";
-            output += pointer.getMsg() + "\n" + "\n";
-            if (pointer.getParent() != null) {
-                pointer = pointer.getParent().getFirst();
-            } else {
-                pointer = null;
+    /** Show all the log from all commits, as they are read.
+     * @param args global-log [-n COUNT] [--since DATE] */
+    public void globalLog(String[] args) {
+        long[] limits = logLimits(args);
+        PrintWriter out = output();
+        long n = 0;
+        for (String key : _store.commitIds()) {
+            if (n >= limits[0]) {
+                break;
+            }
+            if (_store.timestamp(key) >= limits[1]) {
+                logEntry(out, "===", _store.readCommit(key));
+                n += 1;
             }
         }
-        System.out.println(output);
+        out.println();
+        out.flush();
     }
 
-    /** Show all the log from all commits. */
-    public void globalLog() {
-        String output = "";
-
-        for (String key : _allCommits.keySet()) {
-            Commit pointer = _allCommits.get(key);
-            output += "===\n";
-            output += "commit " + pointer.getindex() + "\n";
+    /** Write the log entry of POINTER, starting with line SEPARATOR, to
+     *  OUT.
+     * @param out PrintWriter
+     * @param separator String
+     * @param pointer Commit */
+    private void logEntry(PrintWriter out, String separator,
+                          Commit pointer) {
+        out.print(separator + "\n");
+        out.print("commit " + pointer.getindex() + "\n");
+        if (pointer.getParent() != null
+                && pointer.getParent().size() == 2) {
+            out.print("Merge: " + pointer.getParent().get(0).substring(0, 7)
+                    + " " + pointer.getParent().get(1).substring(0, 7)
+                    + "\n");
+        }
+        out.print("Date: " + pointer.getTime() + "\n");
+        out.print(pointer.getMsg() + "\n" + "\n");
+    }
 
-            if (pointer.getParent() != null
-                    && pointer.getParent().size() == 2) {
-                output += "Merge: ";
-                output += pointer.getParent().get(0).
-                        getindex().substring(0, 7);
-                output += " ";
-                output += pointer.getParent().get(1).
-                        getindex().substring(0, 7);
-                output += "\n";
+    /** Return the largest number of entries and the earliest commit time,
+     *  in milliseconds, that the options of log command ARGS allow.
+     * @param args String[]
+     * @return {count, since} */
+    private long[] logLimits(String[] args) {
+        long[] limits = {Long.MAX_VALUE, Long.MIN_VALUE};
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (args[i].equals("-n") && i + 1 < args.length) {
+                    limits[0] = Long.parseLong(args[i + 1]);
+                } else if (args[i].equals("--since") && i + 1 < args.length) {
+                    limits[1] = parseDate(args[i + 1]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
             }
-            output += "Date: " + pointer.getTime() + "\n";
-            output += pointer.getMsg() + "\n" + "\n";
+        } catch (IllegalArgumentException | DateTimeParseException excp) {
+            throw Utils.error("Incorrect operands.");
         }
-        System.out.println(output);
+        return limits;
     }
 
-    /** Find the commit index with particular commit msg.
-     * @param msg msg.
-     */
-    public void find(String msg) {
-        String output = "";
-        for (String key : _allCommits.keySet()) {
-            Commit pointer = _allCommits.get(key);
+    /** Return DATE, given as yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss in local
+     *  time, in milliseconds since the epoch.
+     * @param date String
+     * @return long */
+    private static long parseDate(String date) {
+        LocalDateTime time = date.contains("T") ? LocalDateTime.parse(date)
+                : LocalDate.parse(date).atStartOfDay();
+        return time.atZone(ZoneId.systemDefault()).toInstant()
+                .toEpochMilli();
+    }
+
+    /** Return a buffered writer on the standard output.
+     * @return PrintWriter */
+    private static PrintWriter output() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), Utils.BUFFER_SIZE));
+    }
 
-            if (pointer.getMsg().equals(msg)) {
-                output += pointer.getindex() + "\n";
+    /** Find the commit index with particular commit msg, or with
+     *  messages containing a word or a word prefix.
+     * @param args find MSG | find --word WORD | find --prefix PREFIX
+     */
+    public void find(String[] args) {
+        if (!_messages.exists()) {
+            List<String> keys = _store.commitIds();
+            keys.sort(Comparator.comparingLong(_store::timestamp)
+                      .thenComparingInt(_store::generation)
+                      .thenComparing(Comparator.naturalOrder()));
+            for (String key : keys) {
+                _messages.add(_store.readCommit(key));
             }
         }
-
-        if (output.length() == 0) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+        List<String> ids;
+        if (args.length == 2) {
+            ids = _messages.exact(args[1]);
+        } else if (args.length == 3 && args[1].equals("--word")) {
+            ids = _messages.word(args[2]);
+        } else if (args.length == 3 && args[1].equals("--prefix")) {
+            ids = _messages.prefix(args[2]);
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+        ids.removeIf(id -> !_store.hasCommit(id));
+        if (ids.isEmpty()) {
+            throw Utils.error("Found no commit with that message.");
         } else {
-            System.out.println(output);
+            PrintWriter out = output();
+            for (String id : ids) {
+                out.print(id + "\n");
+            }
+            out.println();
+            out.flush();
         }
     }
 
     /** Print out information about status.*/
     public void status() {
         if (_head == null) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw Utils.error("Not in an initialized Gitlet directory.");
         }
         String output = "=== Branches ===\n";
-        List<String> brachname = new ArrayList<>(_branchCommits.keySet());
-        Collections.sort(brachname);
+        List<String> brachname = _refs.branches();
         for (String entry : brachname) {
             if (entry.equals(_branch)) {
                 output += "*" + _branch + "\n";
@@ -291,7 +398,7 @@ public class Command implements Serializable {
             }
         }
         output += "\n" + "=== Staged Files ===" + "\n";
-        List<String> stagename = new ArrayList<>(_staging);
+        List<String> stagename = new ArrayList<>(_staging.keySet());
         Collections.sort(stagename);
         for (String entry: stagename) {
             output += entry + "\n";
@@ -320,40 +427,43 @@ public class Command implements Serializable {
      * @param  output String
      * @return output String*/
     public String statushelper(String output) {
-        List<String> wkd = new ArrayList<>();
-        if (CWD.list() != null) {
-            for (String name: CWD.list()) {
-                int len = name.length();
-                if (len > 4 && name.substring(len - 4, len).equals(".txt")) {
-                    wkd.add(name);
-                }
-            }
-        }
+        List<String> wkd = WorkTree.list(_index);
         List<String> total = new ArrayList<>(); total.addAll(wkd);
-        total.addAll(_staging); total.addAll(_head.getTrackedFiles());
+        total.addAll(_staging.keySet());
+        total.addAll(_head.getTrackedFiles());
         HashSet<String> h = new HashSet<String>(total);
         total.clear(); total.addAll(h); Collections.sort(total);
+        HashSet<String> present = new HashSet<>(wkd);
+        List<String> compared = new ArrayList<>();
+        for (String entry : wkd) {
+            if (_head.getBlob().containsKey(entry)
+                    || _staging.containsKey(entry)) {
+                compared.add(entry);
+            }
+        }
+        TreeMap<String, String> ids = WorkTree.hash(compared, _index);
         String modify = "";
         String untrack = "";
         for (String entry: total) {
-            if (wkd.contains(entry)) {
-                String content = Utils.readContentsAsString(new File(entry));
+            if (present.contains(entry)) {
                 if ((_head.getBlob().containsKey(entry)
-                        && !_staging.contains(entry)
+                        && !_staging.containsKey(entry)
                         && !_head.getBlob().get(entry).
-                        equals(Utils.sha1(content)))
-                        || (_staging.contains(entry) && !content.
-                        equals(Utils.readContentsAsString(
-                        Utils.join(STAGE_FOLDER, entry))))) {
+                        equals(ids.get(entry)))
+                        || (_staging.containsKey(entry)
+                        && !ids.get(entry).equals(_staging.get(entry)))) {
                     modify += entry + " (modified)" +  "\n";
                 } else if (!_head.getBlob().containsKey(entry)
-                        && !_staging.contains(entry)) {
+                        && !_staging.containsKey(entry)) {
                     untrack += entry + "\n";
                 }
-            } else if (_staging.contains(entry)
-                    || (!_remove.contains(entry)
-                    && _head.getTrackedFiles().contains(entry))) {
-                modify += entry +  " (deleted)" + "\n";
+            } else {
+                _index.forget(entry);
+                if (_staging.containsKey(entry)
+                        || (!_remove.contains(entry)
+                        && _head.getTrackedFiles().contains(entry))) {
+                    modify += entry +  " (deleted)" + "\n";
+                }
             }
         }
         output += "\n" + "=== Modifications Not Staged For Commit ===" + "\n";
@@ -363,6 +473,107 @@ public class Command implements Serializable {
         return output;
     }
 
+    /**
+     * Print the changes to the files, as unified diffs: from the head to
+     * the working files with no operands, from the head to the staging
+     * area with --cached, or from one commit to another.  Files with
+     * equal blob ids are skipped without being read: whole subtrees
+     * between commits, and working files by the stat cache.  Except
+     * against working files, whose blobs are not stored, renamed and
+     * copied files are shown as such.
+     *
+     * @param args diff | diff --cached | diff COMMIT COMMIT
+     */
+    public void diff(String[] args) {
+        if (_head == null) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        TreeMap<String, String> head = _head.getBlob();
+        boolean working = args.length == 1;
+        if (working) {
+            TreeSet<String> names = new TreeSet<>(head.keySet());
+            names.addAll(_staging.keySet());
+            List<String> present = new ArrayList<>();
+            for (String name : names) {
+                if (new File(name).isFile()) {
+                    present.add(name);
+                } else if (head.containsKey(name)) {
+                    changes.put(name, new String[] {head.get(name), null});
+                }
+            }
+            TreeMap<String, String> ids = WorkTree.hash(present, _index);
+            for (String name : present) {
+                if (!ids.get(name).equals(head.get(name))) {
+                    changes.put(name, new String[] {head.get(name),
+                        ids.get(name)});
+                }
+            }
+        } else if (args.length == 2 && args[1].equals("--cached")) {
+            for (Map.Entry<String, String> entry : _staging.entrySet()) {
+                if (!entry.getValue().equals(head.get(entry.getKey()))) {
+                    changes.put(entry.getKey(), new String[] {
+                        head.get(entry.getKey()), entry.getValue()});
+                }
+            }
+            for (String name : _remove) {
+                if (head.containsKey(name)) {
+                    changes.put(name, new String[] {head.get(name), null});
+                }
+            }
+        } else if (args.length == 3) {
+            Commit from = findCommit(args[1]);
+            Commit to = from == null ? null : findCommit(args[2]);
+            if (to == null) {
+                return;
+            }
+            Tree.diff(_store, from.getTree(), to.getTree(), "", changes);
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+        TreeMap<String, Renames.Rename> renames = new TreeMap<>();
+        HashMap<String, String> sources = new HashMap<>();
+        if (!working) {
+            for (Renames.Rename rename
+                     : Renames.detect(_store, changes, true)) {
+                renames.put(rename.to, rename);
+                sources.put(rename.to, changes.get(rename.from)[0]);
+            }
+            for (Renames.Rename rename : renames.values()) {
+                if (!rename.copy) {
+                    changes.remove(rename.from);
+                }
+            }
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                System.out, Utils.BUFFER_SIZE), false);
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String name = change.getKey();
+            String[] ids = change.getValue();
+            Renames.Rename rename = renames.get(name);
+            String from = name, header = "";
+            if (rename != null) {
+                String kind = rename.copy ? "copy" : "rename";
+                from = rename.from;
+                ids = new String[] {sources.get(name), ids[1]};
+                header = "similarity index " + rename.score + "%\n"
+                    + kind + " from " + from + "\n"
+                    + kind + " to " + name + "\n";
+            }
+            byte[] old = ids[0] == null ? null : _store.readBlob(ids[0]);
+            byte[] now;
+            if (ids[1] == null) {
+                now = null;
+            } else if (working) {
+                now = Utils.readContents(new File(name));
+            } else {
+                now = _store.readBlob(ids[1]);
+            }
+            Diff.unified(from, name, header, old, now, out);
+        }
+        out.flush();
+    }
+
     /**
      * 1. checkout [branch name]:
      * Create/overwrite files, update _currentBranch & _head.
@@ -376,30 +587,15 @@ public class Command implements Serializable {
             if (args[1].equals(_branch)) {
                 System.out.println("No need to checkout the current branch.");
                 return;
-            } else if (!_branchCommits.keySet().contains(args[1])) {
+            } else if (!_refs.contains(args[1])) {
                 System.out.println("No such branch exists.");
                 return;
             }
-            Commit commit = _branchCommits.get(args[1]).getLast();
-            for (String s : commit.getBlob().keySet()) {
-                if (!_head.getTrackedFiles().contains(s)
-                        && new File(s).exists()) {
-                    System.out.println("There is an untracked file in the way; "
-                            + "delete it, or add and commit it first.");
-                    return;
-                }
-            }
-            TreeMap<String, String> tempBlob = commit.getBlob();
-            for (String s : _head.getTrackedFiles()) {
-                if (!tempBlob.keySet().contains(s)) {
-                    new File(s).delete();
-                }
+            Commit commit = branchHead(args[1]);
+            if (!updateWorkTree(commit)) {
+                return;
             }
             _branch = args[1];
-            for (String s : tempBlob.keySet()) {
-                File temp = Utils.join(BLOB_FOLDER, tempBlob.get(s));
-                Utils.writeContents(new File(s), Utils.readContents(temp));
-            }
             _head = commit;
         } else if (args.length == 3) {
             if (!args[1].equals("--")) {
@@ -407,19 +603,17 @@ public class Command implements Serializable {
                 return;
             }
             Commit commit = _head;
-            if (!commit.getBlob().containsKey(args[2])) {
+            String name = WorkTree.normalize(args[2]);
+            if (!commit.getBlob().containsKey(name)) {
                 System.out.println("File does not exist in that commit.");
                 return;
             }
-            String code = _head.getBlob().get(args[2]);
-            byte[] content = Utils.readContents(Utils.join(BLOB_FOLDER, code));
-            Utils.writeContents(new File(args[2]), content);
+            String code = _head.getBlob().get(name);
+            _store.checkoutBlob(code, new File(name));
         } else if (args.length == 4) {
             checkouthelper(args);
         } else {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
-            return;
+            throw Utils.error("Incorrect operands.");
         }
     }
 
@@ -430,31 +624,37 @@ public class Command implements Serializable {
      */
     public void checkouthelper(String[] args) {
         if (!args[2].equals("--")) {
-            System.out.println("Incorrect operands.");
-            System.exit(0); return;
-        }
-        String code = args[1]; Commit commit;
-        boolean notexist = true;
-        for (String key : _allCommits.keySet()) {
-            if (code.equals(key.substring(0, code.length()))) {
-                commit = _allCommits.get(key);
-                notexist = false;
-                if (commit.getBlob().containsKey(args[3])) {
-                    File temp = Utils.join(BLOB_FOLDER,
-                            commit.getBlob().get(args[3]));
-                    Utils.writeContents(new File(args[3]),
-                            Utils.readContents(temp));
-                } else {
-                    System.out.println("File does not exist in that commit.");
-                    return;
-                }
-                break;
-            }
+            throw Utils.error("Incorrect operands.");
         }
-        if (notexist) {
-            System.out.println("No commit with that id exists.");
+        Commit commit = findCommit(args[1]);
+        if (commit == null) {
             return;
         }
+        String name = WorkTree.normalize(args[3]);
+        if (commit.getBlob().containsKey(name)) {
+            _store.checkoutBlob(commit.getBlob().get(name), new File(name));
+        } else {
+            System.out.println("File does not exist in that commit.");
+        }
+    }
+
+    /**
+     * Return the commit whose id starts with CODE, or print why there
+     * is none and return null.
+     *
+     * @param code abbreviated commit id.
+     * @return Commit.
+     */
+    private Commit findCommit(String code) {
+        List<String> ids = _store.findCommits(code, 2);
+        if (ids.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (ids.size() > 1) {
+            System.out.println("Ambiguous commit id.");
+            return null;
+        }
+        return _store.readCommit(ids.get(0));
     }
 
 
@@ -465,19 +665,12 @@ public class Command implements Serializable {
     public void branch(String[] args) {
         String branchName = args[1];
 
-        if (_branchCommits.keySet().contains(branchName)) {
+        if (_refs.contains(branchName)) {
             System.out.println("A branch with that name already exsists.");
             return;
         }
 
-        LinkedList<Commit> branchlist = new LinkedList<>();
-        branchlist.add(_head);
-        Commit temp = _head;
-        while (temp.getParent() != null) {
-            temp = temp.getParent().getFirst();
-            branchlist.addFirst(temp);
-        }
-        _branchCommits.put(branchName, branchlist);
+        _refs.setBranchHead(branchName, _head.getindex());
     }
 
     /**
@@ -485,7 +678,7 @@ public class Command implements Serializable {
      * @param branch branch.
      */
     public void rmbranch(String branch) {
-        if (!_branchCommits.keySet().contains(branch)) {
+        if (!_refs.contains(branch)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
@@ -493,53 +686,22 @@ public class Command implements Serializable {
             System.out.println("Cannot remove the current branch.");
             return;
         }
-        _branchCommits.remove(branch);
+        _refs.delete(branch);
     }
 
     /** Reset.
      * @param args id.
      */
     public void reset(String args) {
-        Commit commit = null;
-        for (String key : _allCommits.keySet()) {
-            if (args.equals(key.substring(0, args.length()))) {
-                commit = _allCommits.get(key);
-                break;
-            }
-        }
+        Commit commit = findCommit(args);
         if (commit == null) {
-            System.out.println("No commit with that id exists.");
             return;
         }
-        for (String s : commit.getBlob().keySet()) {
-            if (!_head.getTrackedFiles().contains(s)
-                    && new File(s).exists()) {
-                System.out.println("There is an untracked file in the way;"
-                        + " delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        for (String fileName : commit.getTrackedFiles()) {
-            String code = commit.getBlob().get(fileName);
-            if (code != null) {
-                byte[] content = Utils.readContents(
-                        Utils.join(BLOB_FOLDER, code));
-                Utils.writeContents(new File(fileName), content);
-            } else {
-                File file = new File(fileName);
-                file.delete();
-            }
+        if (!updateWorkTree(commit, true)) {
+            return;
         }
-
         _head = commit;
-        for (String branch : _branchCommits.keySet()) {
-            LinkedList<Commit> commitList = _branchCommits.get(branch);
-            if (commitList.contains(_head)) {
-                _branch = branch;
-                break;
-            }
-        }
+        _refs.setBranchHead(_branch, commit.getindex());
     }
 
     /** Megre.
@@ -553,38 +715,54 @@ public class Command implements Serializable {
         } else if (!_staging.isEmpty() || !_remove.isEmpty()) {
             System.out.println("You have uncommitted changes.");
             return;
-        } else if (!_branchCommits.keySet().contains(args)) {
+        } else if (!_refs.contains(args)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
 
-        Commit splitPoint = new Commit();
-        LinkedList<Commit> tbranch = _branchCommits.get(args);
-        LinkedList<Commit> mbranch = _branchCommits.get(_branch);
-        for (Commit temp : tbranch) {
-            if (!mbranch.contains(temp)) {
-                int index = tbranch.indexOf(temp);
-                if (index > 0) {
-                    splitPoint = tbranch.get(index - 1);
-                } else {
-                    splitPoint = tbranch.get(0);
-                }
-                break;
+        MergeBase graph = new MergeBase(_store);
+        String current = _head.getindex();
+        String given = _refs.branchHead(args);
+        if (graph.isAncestor(given, current)) {
+            System.out.println("Given branch is an ancestor of the current"
+                    + " branch.");
+            return;
+        } else if (graph.isAncestor(current, given)) {
+            Commit target = _store.readCommit(given);
+            if (updateWorkTree(target)) {
+                _head = target;
+                _refs.setBranchHead(_branch, given);
+                System.out.println("Current branch fast-forwarded.");
             }
+            return;
         }
+
+        Commit splitPoint = _store.readCommit(
+                graph.find(current, given).get(0));
         TreeMap<String, String> tFiles =
-                _branchCommits.get(args).getLast().getBlob();
+                new TreeMap<>(branchHead(args).getBlob());
         TreeMap<String, String> curFiles =
-                _branchCommits.get(_branch).getLast().getBlob();
-        TreeMap<String, String> spFiles = splitPoint.getBlob();
+                new TreeMap<>(branchHead(_branch).getBlob());
+        TreeMap<String, String> spFiles = new TreeMap<>(splitPoint.getBlob());
+        List<String[]> moved = followRenames(splitPoint, branchHead(args),
+                tFiles, curFiles, spFiles);
 
         boolean conflict1 = targetcheck(args, tFiles, curFiles, spFiles);
         boolean conflict2  = spplitcheck(tFiles, curFiles, spFiles);
+        for (String[] rename : moved) {
+            if (!_staging.containsKey(rename[1])
+                    && !new File(rename[1]).exists()) {
+                _store.checkoutBlob(curFiles.get(rename[1]),
+                        new File(rename[1]));
+                add(rename[1]);
+            }
+            remove(rename[0]);
+        }
         for (String currFile : curFiles.keySet()) {
             if (!spFiles.containsKey(currFile)
                     && !tFiles.containsKey(currFile)) {
                 if (currFile.equals("f.txt")) {
-                    new File(currFile).delete();
+                    WorkTree.delete(currFile);
                 }
             }
         }
@@ -594,14 +772,128 @@ public class Command implements Serializable {
             return;
         }
 
-        commit(new Commit(_branchCommits.get(_branch).getLast(),
-                _branchCommits.get(args).getLast(),
+        commit(new Commit(branchHead(_branch), branchHead(args),
                 "Merged " + args + " into " + _branch + "."));
         if (conflict1 || conflict2) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
+    /**
+     * Line up the paths of the files renamed on one side since the split
+     * point SPLIT, as detected between the trees, so that the merge
+     * compares each file under its new name.  Files the given branch,
+     * headed by GIVEN, renamed are moved in CURFILES and SPFILES, and
+     * files the current branch renamed in TGTFILES and SPFILES, their
+     * old paths being marked for removal so that the merge commit does
+     * not take them back from the given branch.  A file renamed on both
+     * sides keeps its paths.
+     *
+     * @param split    split point.
+     * @param given    given branch head.
+     * @param tgtFiles targetFiles.
+     * @param curFiles currFiles.
+     * @param spFiles  spFiles.
+     * @return the {old, new} paths of the files the given branch renamed.
+     */
+    private List<String[]> followRenames(Commit split, Commit given,
+                                         TreeMap<String, String> tgtFiles,
+                                         TreeMap<String, String> curFiles,
+                                         TreeMap<String, String> spFiles) {
+        List<String[]> result = new ArrayList<>();
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(_store, split.getTree(), given.getTree(), "", changes);
+        for (Renames.Rename rename : Renames.detect(_store, changes, false)) {
+            if (curFiles.containsKey(rename.from)
+                    && !curFiles.containsKey(rename.to)) {
+                curFiles.put(rename.to, curFiles.remove(rename.from));
+                spFiles.put(rename.to, spFiles.remove(rename.from));
+                result.add(new String[] {rename.from, rename.to});
+            }
+        }
+        changes.clear();
+        Tree.diff(_store, split.getTree(), _head.getTree(), "", changes);
+        for (Renames.Rename rename : Renames.detect(_store, changes, false)) {
+            if (tgtFiles.containsKey(rename.from)
+                    && !tgtFiles.containsKey(rename.to)
+                    && spFiles.containsKey(rename.from)) {
+                tgtFiles.put(rename.to, tgtFiles.remove(rename.from));
+                spFiles.put(rename.to, spFiles.remove(rename.from));
+                _remove.add(rename.from);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Make the working files tracked by the current head those of
+     * TARGET, writing or deleting only the files whose blobs differ,
+     * as found by comparing their trees, on the worker pool if there
+     * are many.  Nothing is touched if an untracked file would be
+     * overwritten.
+     *
+     * @param target target commit.
+     * @return false iff an untracked file was in the way.
+     */
+    private boolean updateWorkTree(Commit target) {
+        return updateWorkTree(target, false);
+    }
+
+    /**
+     * As updateWorkTree(TARGET), but if HARD, also restore the files
+     * whose blobs do not change but whose working copies, as checked
+     * against the stat cache, are missing or modified.
+     *
+     * @param target target commit.
+     * @param hard   also restore modified working files.
+     * @return false iff an untracked file was in the way.
+     */
+    private boolean updateWorkTree(Commit target, boolean hard) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(_store, _head.getTree(), target.getTree(), "", changes);
+        List<String> written = new ArrayList<>();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[0] == null
+                    && new File(change.getKey()).exists()) {
+                System.out.println("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+                return false;
+            } else if (change.getValue()[1] != null) {
+                written.add(change.getKey());
+            }
+        }
+        if (hard) {
+            List<String> kept = new ArrayList<>();
+            for (String name : target.getTrackedFiles()) {
+                if (changes.containsKey(name)) {
+                    continue;
+                } else if (new File(name).isFile()) {
+                    kept.add(name);
+                } else {
+                    written.add(name);
+                    changes.put(name, new String[] {null,
+                        target.getBlob().get(name)});
+                }
+            }
+            TreeMap<String, String> ids = WorkTree.hash(kept, _index);
+            for (String name : kept) {
+                if (!ids.get(name).equals(target.getBlob().get(name))) {
+                    written.add(name);
+                    changes.put(name, new String[] {null,
+                        target.getBlob().get(name)});
+                }
+            }
+        }
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] == null) {
+                WorkTree.delete(change.getKey());
+            }
+        }
+        WorkTree.forEach(written.size(), i -> _store.checkoutBlob(
+                changes.get(written.get(i))[1], new File(written.get(i))));
+        return true;
+    }
+
     /**
      * Check Target.
      *
@@ -615,6 +907,7 @@ public class Command implements Serializable {
                                 TreeMap<String, String> tgtFiles,
                                 TreeMap<String, String> curFiles,
                                 TreeMap<String, String> spFiles) {
+        boolean conflict = false;
         for (String targetFile : tgtFiles.keySet()) {
             if (spFiles.containsKey(targetFile)
                     && !tgtFiles.get(targetFile).
@@ -623,23 +916,18 @@ public class Command implements Serializable {
                 add(targetFile, tgtFiles);
             } else if (!spFiles.containsKey(targetFile)
                     && !curFiles.containsKey(targetFile)) {
-                _head = _branchCommits.get(branch).getLast();
+                _head = branchHead(branch);
                 checkout(new String[]{"checkout", "--", targetFile});
-                _head = _branchCommits.get(_branch).getLast();
+                _head = branchHead(_branch);
                 add(targetFile, tgtFiles);
             } else if (!spFiles.containsKey(targetFile)
                     && !curFiles.get(targetFile).
                     equals(tgtFiles.get(targetFile))) {
-                String currContent = Utils.readContentsAsString
-                        (Utils.join(BLOB_FOLDER, curFiles.get(targetFile)));
-                String givenContent = Utils.readContentsAsString
-                        (Utils.join(BLOB_FOLDER, tgtFiles.get(targetFile)));
-                Utils.writeContents(new File(targetFile),
-                        conflictPrint(currContent, givenContent));
-                return true;
+                conflict |= mergeFile(targetFile, null,
+                        curFiles.get(targetFile), tgtFiles.get(targetFile));
             }
         }
-        return false;
+        return conflict;
     }
 
     /**
@@ -652,54 +940,74 @@ public class Command implements Serializable {
     private boolean spplitcheck(TreeMap<String, String> tgtFiles,
                             TreeMap<String, String> curFiles,
                             TreeMap<String, String> spFiles) {
+        boolean conflict = false;
         for (String spFile : spFiles.keySet()) {
             if (!tgtFiles.containsKey(spFile)
                     && curFiles.containsKey(spFile)
                     && curFiles.get(spFile).equals(spFiles.get(spFile))) {
-                new File(spFile).delete();
+                WorkTree.delete(spFile);
             } else if (tgtFiles.containsKey(spFile)
                     && curFiles.containsKey(spFile)
                     && !curFiles.get(spFile).equals(tgtFiles.get(spFile))) {
-                String currContent = Utils.readContentsAsString
-                        (Utils.join(BLOB_FOLDER, curFiles.get(spFile)));
-                String givenContent = Utils.readContentsAsString
-                        (Utils.join(BLOB_FOLDER, tgtFiles.get(spFile)));
-                Utils.writeContents(new File(spFile),
-                        conflictPrint(currContent, givenContent));
-                return true;
+                conflict |= mergeFile(spFile, spFiles.get(spFile),
+                        curFiles.get(spFile), tgtFiles.get(spFile));
             } else if (!tgtFiles.containsKey(spFile)
                     && curFiles.containsKey(spFile)
                     && !curFiles.get(spFile).equals(spFiles.get(spFile))) {
-                String currContent = Utils.readContentsAsString
-                        (Utils.join(BLOB_FOLDER, curFiles.get(spFile)));
-                String givenContent = "";
-                Utils.writeContents(new File(spFile),
-                        conflictPrint(currContent, givenContent));
-                return true;
+                writeConflict(new File(spFile), curFiles.get(spFile), null);
+                conflict = true;
             } else if (tgtFiles.containsKey(spFile)
                     && !curFiles.containsKey(spFile)
                     && !tgtFiles.get(spFile).equals(spFiles.get(spFile))) {
-                String currContent = "";
-                String givenContent = Utils.readContentsAsString
-                        (Utils.join(BLOB_FOLDER, tgtFiles.get(spFile)));
-                Utils.writeContents(new File(spFile),
-                        conflictPrint(currContent, givenContent));
-                return true;
+                writeConflict(new File(spFile), null, tgtFiles.get(spFile));
+                conflict = true;
             }
         }
+        return conflict;
+    }
+
+    /**
+     * Merge the changes made to file NAME since the split point, where
+     * its blob was BASE (null if absent), in the current blob CURR and
+     * the given blob GIVEN, line by line.  A clean result is written and
+     * staged; otherwise the result, with only the lines the two sides
+     * disagree on between conflict markers, is written.  Binary files
+     * conflict as a whole.
+     *
+     * @param name  file name.
+     * @param base  split point blob id, or null if absent.
+     * @param curr  current blob id.
+     * @param given given blob id.
+     * @return Conflicted.
+     */
+    private boolean mergeFile(String name, String base, String curr,
+                              String given) {
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        int conflicts = LineMerge.merge(
+                base == null ? new byte[0] : _store.readBlob(base),
+                _store.readBlob(curr), _store.readBlob(given), merged);
+        Utils.writeContents(new File(name), merged.toByteArray());
+        if (conflicts > 0) {
+            return true;
+        }
+        add(name);
         return false;
     }
 
 
     /**
-     * Return merge conflict file.
+     * Write merge conflict file. The versions are copied as raw bytes, so
+     * binary contents survive unchanged between the markers.
      *
-     * @param curr  curr.
-     * @param given given.
-     * @return String.
+     * @param file  file.
+     * @param curr  current blob id, or null if absent.
+     * @param given given blob id, or null if absent.
      */
-    private String conflictPrint(String curr, String given) {
-        return "<<<<<<< HEAD\n" + curr + "=======\n" + given + ">>>>>>>\n";
+    private void writeConflict(File file, String curr, String given) {
+        byte[] none = new byte[0];
+        Utils.writeContents(file, "<<<<<<< HEAD\n",
+                curr == null ? none : _store.readBlob(curr), "=======\n",
+                given == null ? none : _store.readBlob(given), ">>>>>>>\n");
     }
     /**
      * Return head.*/
@@ -707,20 +1015,46 @@ public class Command implements Serializable {
         return _head;
     }
 
+    /** Print a summary of the use of the object cache on the standard
+     *  error, if asked for. */
+    void reportCache() {
+        if (ObjectCache.reporting()) {
+            System.err.println(_store.cacheStats());
+        }
+    }
+
+    /** Pack loose blobs into a compressed pack file. */
+    public void gc() {
+        save();
+        _journal.checkpoint();
+        _store.repack();
+    }
+
+    /** Return the latest commit of branch NAME. */
+    private Commit branchHead(String name) {
+        return _store.readCommit(_refs.branchHead(name));
+    }
+
 
 
     /** Record current branch. */
     private String _branch;
     /** Current Commit. */
     private Commit _head;
-    /** All of the commits paired with Branch.*/
-    private HashMap<String, LinkedList<Commit>> _branchCommits;
-    /** All commits. */
-    private HashMap<String, Commit> _allCommits;
+    /** Commit records. */
+    private ObjectStore _store;
+    /** Branch records and HEAD. */
+    private Refs _refs;
+    /** Commit message index. */
+    private MessageIndex _messages;
+    /** Staging index record. */
+    private StagingArea _index;
+    /** Journal through which the records are saved. */
+    private Journal _journal;
     /** File names to be removed. */
     private HashSet<String> _remove;
     /** Staging file names. */
-    private HashSet<String> _staging;
+    private HashMap<String, String> _staging;
     /** Remove tmp. */
     private HashSet<String> _rmTmp;
     /** Remove tmp. */
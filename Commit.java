@@ -1,11 +1,14 @@
 package gitlet;
 
 
-import java.io.File;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -15,62 +18,85 @@ import java.util.Date;
 
 public class Commit implements Serializable {
 
+    /** Format of commit times. */
+    static final String TIME_FORMAT = "EEE MMM dd HH:mm:ss yyyy Z";
+
     /** Default Constructor. */
     public Commit() {
         _msg = "initial commit";
-        _time = new SimpleDateFormat("EEE MMM dd"
-                + " HH:mm:ss yyyy Z").format(new Date(0));
+        _time = new SimpleDateFormat(TIME_FORMAT).format(new Date(0));
         _parent = null;
-        _Blob = new TreeMap<>();
-        _trackedFiles = new HashSet<>();
-        _index = hashcode();
+        _generation = 1;
+        _changes = new TreeMap<>();
     }
 
-    /** Constructor.
+    /** Constructor.  Only the tree id of PARENT is needed: its files
+     *  are not read.
      * @param parent commit.
      * @param msg message.
      */
-    @SuppressWarnings("unchecked")
     public Commit(Commit parent, String msg) {
         _msg = msg;
-        _time = new SimpleDateFormat("EEE MMM dd"
-                + " HH:mm:ss yyyy Z").format(new Date());
-        _parent = new LinkedList<Commit>();
-        _parent.add(parent);
-        _Blob = (TreeMap<String, String>) parent.getBlob().clone();
-        _trackedFiles = (HashSet<String>) parent.getTrackedFiles().clone();
-        _index = hashcode();
+        _time = new SimpleDateFormat(TIME_FORMAT).format(new Date());
+        _parent = new LinkedList<String>();
+        _parent.add(parent.getindex());
+        _generation = parent.getGeneration() + 1;
+        _base = parent.getTree();
+        _store = parent._store;
+        _changes = new TreeMap<>();
     }
 
-    /** Constructor.
+    /** Constructor.  The files of PARENT2 are taken over those of
+     *  PARENT1, reading only the subtrees in which they differ.
      * @param parent1 commit.
      * @param parent2 commit.
      * @param msg String.
      */
-    @SuppressWarnings("unchecked")
     public Commit(Commit parent1, Commit parent2, String msg) {
         _msg = msg;
-        _time = new SimpleDateFormat("EEE MMM dd "
-                + "HH:mm:ss yyyy Z").format(new Date());
-        _parent = new LinkedList<Commit>();
-        _parent.add(parent1);
-        _parent.add(parent2);
-        _Blob = (TreeMap<String, String>) parent1.getBlob().clone();
-        for (String iter: parent2.getBlob().keySet()) {
-            _Blob.put(iter, parent2.getBlob().get(iter));
-        }
-        _trackedFiles = (HashSet<String>) parent1.getTrackedFiles().clone();
-        for (String iter : parent2.getTrackedFiles()) {
-            _trackedFiles.add(iter);
+        _time = new SimpleDateFormat(TIME_FORMAT).format(new Date());
+        _parent = new LinkedList<String>();
+        _parent.add(parent1.getindex());
+        _parent.add(parent2.getindex());
+        _generation = Math.max(parent1.getGeneration(),
+                parent2.getGeneration()) + 1;
+        _base = parent1.getTree();
+        _store = parent1._store;
+        _changes = new TreeMap<>();
+        TreeMap<String, String[]> diff = new TreeMap<>();
+        Tree.diff(_store, _base, parent2.getTree(), "", diff);
+        for (Map.Entry<String, String[]> entry : diff.entrySet()) {
+            if (entry.getValue()[1] != null) {
+                track(entry.getKey(), entry.getValue()[1]);
+            }
         }
-        _index = hashcode();
     }
 
-    /** Set id. */
-    public void setindex() {
+    /** Track file NAME with blob id CODE in this new commit. */
+    void track(String name, String code) {
+        _changes.put(name, code);
+    }
+
+    /** Stop tracking file NAME in this new commit. */
+    void untrack(String name) {
+        _changes.put(name, null);
+    }
+
+    /** Set id, writing the tree nodes changed since the first parent
+     *  to STORE.
+     * @param store ObjectStore */
+    void setindex(ObjectStore store) {
+        _tree = Tree.update(store, _base, _changes);
+        _changes = null;
+        _store = store;
         _index = hashcode();
     }
 
+    /** Use STORE to read the tree of this commit when it is needed. */
+    void attach(ObjectStore store) {
+        _store = store;
+    }
+
     /** get index.
      * @return _index*/
     public String getindex() {
@@ -86,33 +112,82 @@ public class Commit implements Serializable {
     public String getTime() {
         return _time;
     }
-    /** get parent commit.
+    /** get time in milliseconds since the epoch.
+     *  @return long*/
+    public long getTimestamp() {
+        try {
+            return new SimpleDateFormat(TIME_FORMAT).parse(_time).getTime();
+        } catch (ParseException excp) {
+            throw Utils.error("Bad commit time %s.", _time);
+        }
+    }
+    /** get parent commit ids.
      * @return _parent*/
-    public LinkedList<Commit> getParent() {
+    public LinkedList<String> getParent() {
         return _parent;
     }
-    /** get blob.
+    /** get generation number: 1 for the initial commit, otherwise one
+     *  more than the largest generation of the parents.
+     * @return _generation*/
+    public int getGeneration() {
+        return _generation;
+    }
+    /** get tree id.
+     * @return _tree*/
+    public String getTree() {
+        return _tree;
+    }
+    /** get blob, reading the tree on first use.  While the commit is
+     *  being built, the files of the first parent with the changes made
+     *  so far, built afresh on each call.
      * @return _Blob*/
     public TreeMap<String, String> getBlob() {
+        if (_changes != null && _Blob == null) {
+            TreeMap<String, String> result = new TreeMap<>();
+            if (_base != null) {
+                _store.readTree(_base).flatten("", _store, result);
+            }
+            for (Map.Entry<String, String> change : _changes.entrySet()) {
+                if (change.getValue() == null) {
+                    result.remove(change.getKey());
+                } else {
+                    result.put(change.getKey(), change.getValue());
+                }
+            }
+            return result;
+        }
+        if (_Blob == null) {
+            _Blob = new TreeMap<>();
+            _store.readTree(_tree).flatten("", _store, _Blob);
+            _store.flattened(this);
+        }
         return _Blob;
     }
+
+    /** Return the number of files in the map built by getBlob, or 0 if
+     *  it has not been built. */
+    int flattenedSize() {
+        return _Blob == null ? 0 : _Blob.size();
+    }
     /** get tracked fileds.
-     * @return _trackedFiles*/
-    public HashSet<String> getTrackedFiles() {
-        return _trackedFiles;
+     * @return the names of the files in getBlob()*/
+    public Set<String> getTrackedFiles() {
+        return getBlob().keySet();
     }
 
-    /** get hashcode.
+    /** get hashcode. The id covers the metadata and the tree id, which
+     *  already identifies every tracked file and its contents.
      * @return String*/
     public String hashcode() {
-        String item = _time + _msg + _parent;
-        if (_Blob != null) {
-            for (String iter : _Blob.keySet()) {
-                File temp = Utils.join(Command.BLOB_FOLDER, _Blob.get(iter));
-                String result = Utils.readContentsAsString(temp);
-                item += result;
+        List<Object> item = new ArrayList<>();
+        item.add(_time);
+        item.add("\0" + _msg + "\0");
+        if (_parent != null) {
+            for (String parent : _parent) {
+                item.add(parent + "\n");
             }
         }
+        item.add(_tree);
         return Utils.sha1(item);
     }
 
@@ -123,12 +198,21 @@ public class Commit implements Serializable {
     private String _msg;
     /** Commit time.  */
     private String _time;
-    /** Commit Parents. */
-    private LinkedList<Commit> _parent;
-    /** Tracked Files.  */
-    private HashSet<String> _trackedFiles;
-    /** File name and blob ID. */
-    private TreeMap<String, String> _Blob;
-
+    /** Commit Parent ids. */
+    private LinkedList<String> _parent;
+    /** Generation number. */
+    private int _generation;
+    /** Tree ID. */
+    private String _tree;
+    /** File name and blob ID, read from the tree on demand once the
+     *  commit is built. */
+    private transient TreeMap<String, String> _Blob;
+    /** Tree ID of the first parent, while the commit is being built. */
+    private transient String _base;
+    /** Files changed since the first parent, mapped to their blob ID or
+     *  null if removed, while the commit is being built. */
+    private transient TreeMap<String, String> _changes;
+    /** Where to read the tree from. */
+    private transient ObjectStore _store;
 
 }
@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commit-graph file: for every commit it covers, the positions of
+ *  its parents, its commit time and its generation number, in primitive
+ *  tables indexed by the position of the commit's id in a sorted id
+ *  table.  The file is memory-mapped, so history walks over covered
+ *  commits never deserialize a Commit.
+ *
+ *  The file holds a header (magic number, version, count), the fan-out
+ *  table and sorted ids of SortedIds, two 4-byte parent positions per
+ *  commit (-1 for none), an 8-byte commit time per commit and a 4-byte
+ *  generation number per commit.
+ *  @author Yuqiong Ji.
+ */
+class CommitGraph {
+
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x47435247;
+    /** Format version. */
+    static final int VERSION = 1;
+    /** Bytes before the fan-out table. */
+    private static final int HEADER = 3 * 4;
+    /** Position of the first id. */
+    private static final int IDS = HEADER + 4 * SortedIds.FANOUT;
+    /** Largest number of parents of a commit. */
+    static final int MAX_PARENTS = 2;
+
+    /** The commit graph in FILE, which is empty if FILE does not
+     *  exist. */
+    CommitGraph(File file) {
+        if (!file.isFile()) {
+            _map = null;
+            _ids = null;
+            return;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            _map = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                       0, in.length());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit graph.");
+        }
+        if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+            throw Utils.error("Bad commit graph.");
+        }
+        int count = _map.getInt(2 * 4);
+        _ids = new SortedIds(_map, HEADER, IDS, count);
+        _parents = IDS + count * SortedIds.ID_BYTES;
+        _times = _parents + count * MAX_PARENTS * 4;
+        _generations = _times + count * 8;
+    }
+
+    /** Return the position of commit ID in this graph, or -1 if the graph
+     *  does not cover it. */
+    int find(String id) {
+        return _ids == null ? -1 : _ids.find(id);
+    }
+
+    /** Return the id of the commit at position K. */
+    String id(int k) {
+        return _ids.id(k);
+    }
+
+    /** Return the number of parents of the commit at position K. */
+    int parentCount(int k) {
+        int n = 0;
+        while (n < MAX_PARENTS && parent(k, n) >= 0) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Return the position of parent I of the commit at position K, or
+     *  -1 if it has no such parent. */
+    int parent(int k, int i) {
+        return _map.getInt(_parents + (k * MAX_PARENTS + i) * 4);
+    }
+
+    /** Return the commit time, in milliseconds, of the commit at
+     *  position K. */
+    long time(int k) {
+        return _map.getLong(_times + k * 8);
+    }
+
+    /** Return the generation number of the commit at position K. */
+    int generation(int k) {
+        return _map.getInt(_generations + k * 4);
+    }
+
+    /** Write to FILE the graph of the commits IDS, which must be sorted
+     *  and closed under parents, reading them from STORE. */
+    static void write(File file, List<String> ids, ObjectStore store) {
+        HashMap<String, Integer> positions = new HashMap<>();
+        for (int k = 0; k < ids.size(); k += 1) {
+            positions.put(ids.get(k), k);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            SortedIds.write(out, ids);
+            for (String id : ids) {
+                List<String> parents = store.readCommit(id).getParent();
+                for (int i = 0; i < MAX_PARENTS; i += 1) {
+                    if (parents != null && i < parents.size()) {
+                        out.writeInt(positions.get(parents.get(i)));
+                    } else {
+                        out.writeInt(-1);
+                    }
+                }
+            }
+            for (String id : ids) {
+                out.writeLong(store.readCommit(id).getTimestamp());
+            }
+            for (String id : ids) {
+                out.writeInt(store.readCommit(id).getGeneration());
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit graph.");
+        }
+        if (!temp.renameTo(file)) {
+            throw Utils.error("Cannot install commit graph.");
+        }
+    }
+
+    /** The mapped file, or null if there is none. */
+    private MappedByteBuffer _map;
+    /** The ids of the covered commits, or null if there are none. */
+    private SortedIds _ids;
+    /** Position of the parent table. */
+    private int _parents;
+    /** Position of the commit time table. */
+    private int _times;
+    /** Position of the generation table. */
+    private int _generations;
+}
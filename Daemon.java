@@ -0,0 +1,189 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A long-running server for one repository.  It listens on a Unix
+ *  domain socket in the repository and runs the commands sent to it one
+ *  at a time, each against a fresh Command sharing one ObjectStore, so
+ *  the records, packs and commit graph loaded by earlier commands stay
+ *  in memory.  A Watcher reports changes to the working tree and the
+ *  repository, so that working files verified by an earlier command and
+ *  whose stat data are unchanged are not read again.
+ *
+ *  "java gitlet.Main daemon" starts a daemon in the foreground in the
+ *  current directory; "java gitlet.Main daemon stop" stops it.  While a
+ *  daemon runs, Main forwards every command to it.  A request is the
+ *  number of arguments followed by each argument in modified UTF-8; the
+ *  reply is the output of the command, up to the end of the stream.
+ *  @author Yuqiong Ji.
+ */
+class Daemon {
+
+    /** The socket of the daemon of the repository in the current
+     *  directory. */
+    static final File SOCKET = new File(".gitlet/daemon.sock");
+
+    /** Run the daemon command ARGS: "daemon" to serve the repository,
+     *  "daemon stop" to stop its daemon. */
+    static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[1].equals("stop")) {
+            if (!forward(args)) {
+                System.out.println("No daemon is running.");
+            }
+        } else if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+        } else if (!Command.GIT_FOLDER.isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+        } else if (running()) {
+            System.out.println("A daemon is already running.");
+        } else {
+            new Daemon().serve();
+        }
+    }
+
+    /** Send the command ARGS to the daemon of this repository, if one is
+     *  running, and copy its output to the standard output.  Return
+     *  false iff no daemon could be reached, in which case the command
+     *  was not run. */
+    static boolean forward(String[] args) {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(address());
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+            return true;
+        } catch (IOException excp) {
+            throw Utils.error("Lost connection to the daemon.");
+        }
+    }
+
+    /** Return true iff a daemon answers on SOCKET. */
+    static boolean running() {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        try (SocketChannel channel = SocketChannel.open(address())) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the address of SOCKET. */
+    private static UnixDomainSocketAddress address() {
+        return UnixDomainSocketAddress.of(SOCKET.toPath());
+    }
+
+    /** A daemon for the repository in the current directory. */
+    Daemon() throws IOException {
+        _store = new ObjectStore(Command.COMMIT_FOLDER, Command.TREE_FOLDER,
+                                 Command.BLOB_FOLDER, Command.PACK_FOLDER,
+                                 Command.GRAPH_FILE);
+        _watcher = new Watcher();
+    }
+
+    /** Serve commands until told to stop. */
+    void serve() throws IOException {
+        SOCKET.delete();
+        WorkTree.watch(_watcher);
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address());
+            System.out.println("Daemon listening on " + SOCKET + ".");
+            while (!_stopped) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            WorkTree.watch(null);
+            SOCKET.delete();
+        }
+    }
+
+    /** Read one command from CLIENT, run it and send back its output. */
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(client)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        PrintStream console = System.out;
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(Channels.newOutputStream(client),
+                                     Utils.BUFFER_SIZE),
+            false, StandardCharsets.UTF_8);
+        System.setOut(out);
+        try {
+            run(args);
+        } finally {
+            out.flush();
+            System.setOut(console);
+        }
+    }
+
+    /** Run the command ARGS, printing its output. */
+    private void run(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Please enter a command.");
+        } else if (args[0].equals("daemon")) {
+            if (args.length == 2 && args[1].equals("stop")) {
+                _stopped = true;
+                System.out.println("Daemon stopped.");
+            } else {
+                System.out.println("A daemon is already running.");
+            }
+        } else {
+            if (_watcher.repositoryChanged()) {
+                _store.refresh();
+            }
+            Command repo = new Command(_store);
+            try {
+                Main.execute(repo, args);
+                repo.save();
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            } catch (RuntimeException excp) {
+                System.out.println(excp);
+            }
+            repo.reportCache();
+        }
+    }
+
+    /** The object store shared by all commands. */
+    private final ObjectStore _store;
+    /** Watcher of the working tree and repository. */
+    private final Watcher _watcher;
+    /** True once a stop request was received. */
+    private boolean _stopped;
+}
@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file.  A delta is a sequence
+ *  of instructions that rebuild the target from the base: copies of
+ *  ranges of the base and literal insertions of new bytes.
+ *  @author Yuqiong Ji.
+ */
+class Delta {
+
+    /** Length of the base blocks matched against the target. */
+    private static final int BLOCK = 16;
+    /** Longest literal insertion encoded by one instruction. */
+    private static final int MAX_INSERT = 0x7f;
+    /** Flag marking a copy instruction. */
+    private static final int COPY = 0x80;
+
+    /** Return a delta that rebuilds TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(hash(target, i));
+            if (at == null || !matches(base, at, target, i, BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int start = at;
+            int from = i;
+            while (from > pending && start > 0
+                   && base[start - 1] == target[from - 1]) {
+                start -= 1;
+                from -= 1;
+            }
+            int end = at + BLOCK;
+            int to = i + BLOCK;
+            while (end < base.length && to < target.length
+                   && base[end] == target[to]) {
+                end += 1;
+                to += 1;
+            }
+            insert(out, target, pending, from);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, end - start);
+            pending = to;
+            i = to;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the target rebuilt by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        int baseLength = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]] & 0xff;
+            pos[0] += 1;
+            if (op == COPY) {
+                int start = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, start, result, size, len);
+                size += len;
+            } else {
+                System.arraycopy(delta, pos[0], result, size, op);
+                pos[0] += op;
+                size += op;
+            }
+        }
+        if (size != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Write literal insertions of TARGET[FROM .. TO - 1] to OUT. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        while (from < to) {
+            int len = Math.min(MAX_INSERT, to - from);
+            out.write(len);
+            out.write(target, from, len);
+            from += len;
+        }
+    }
+
+    /** Return true iff the LEN bytes of A at I equal those of B at J. */
+    private static boolean matches(byte[] a, int i, byte[] b, int j,
+                                   int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + data[k];
+        }
+        return h;
+    }
+
+    /** Write non-negative VAL to OUT, seven bits per byte. */
+    private static void writeVarint(ByteArrayOutputStream out, int val) {
+        while (val >= COPY) {
+            out.write((val & MAX_INSERT) | COPY);
+            val >>>= 7;
+        }
+        out.write(val);
+    }
+
+    /** Read a number written by writeVarint from DATA at POS[0],
+     *  advancing POS[0] past it. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (b & MAX_INSERT) << shift;
+            shift += 7;
+        } while ((b & COPY) != 0);
+        return result;
+    }
+}
@@ -0,0 +1,401 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs of file contents.
+ *
+ *  Texts are split into lines, each line ending just after its '\n' (the
+ *  last one possibly without one), and every distinct line is numbered,
+ *  so the diff itself compares arrays of ints and never builds Strings.
+ *  The diff is a histogram diff: it anchors on the longest run of lines
+ *  common to both sides that starts with a line occurring rarely in the
+ *  first, and recurses on either side of it.  Regions with no rare
+ *  common line, or nested too deeply, fall back to Myers' algorithm in
+ *  its linear-space form, bisecting on the middle snake.
+ *
+ *  Unified diffs are written hunk by hunk as the edits are walked,
+ *  copying lines straight from the byte arrays of the two versions.
+ *  @author Yuqiong Ji.
+ */
+class Diff {
+
+    /** Lines occurring more often than this in a region are not used as
+     *  histogram anchors. */
+    static final int MAX_CHAIN = 64;
+    /** Nesting of histogram splits past which Myers' algorithm is
+     *  used. */
+    static final int MAX_DEPTH = 64;
+    /** Most anchor candidates compared in one region; the best found
+     *  by then is used. */
+    static final int MAX_CANDIDATES = 1 << 16;
+    /** Lines of context around the changes of a unified diff hunk. */
+    static final int CONTEXT = 3;
+    /** Bytes examined for a NUL when deciding whether a file is
+     *  binary. */
+    static final int BINARY_PROBE = 8000;
+
+    /** A change turning lines [beginA, endA) of the first text into lines
+     *  [beginB, endB) of the second. */
+    static class Edit {
+        /** An edit replacing lines BEGINA to ENDA with lines BEGINB to
+         *  ENDB. */
+        Edit(int beginA, int endA, int beginB, int endB) {
+            this.beginA = beginA;
+            this.endA = endA;
+            this.beginB = beginB;
+            this.endB = endB;
+        }
+
+        /** Bounds of the changed lines of the first text. */
+        final int beginA, endA;
+        /** Bounds of the changed lines of the second text. */
+        final int beginB, endB;
+    }
+
+    /** The lines of a text, numbered so that equal lines of all texts
+     *  numbered by the same Lines share a number. */
+    static class Lines {
+
+        /** An empty line numbering. */
+        Lines() {
+            _numbers = new HashMap<>();
+        }
+
+        /** Return the offsets at which the lines of TEXT start, followed
+         *  by the length of TEXT. */
+        static int[] starts(byte[] text) {
+            int count = 0;
+            for (byte b : text) {
+                if (b == '\n') {
+                    count += 1;
+                }
+            }
+            if (text.length > 0 && text[text.length - 1] != '\n') {
+                count += 1;
+            }
+            int[] result = new int[count + 1];
+            int k = 1;
+            for (int i = 0; i < text.length; i += 1) {
+                if (text[i] == '\n' && k < count) {
+                    result[k] = i + 1;
+                    k += 1;
+                }
+            }
+            result[count] = text.length;
+            return result;
+        }
+
+        /** Return the numbers of the lines of TEXT, which start at
+         *  STARTS. */
+        int[] number(byte[] text, int[] starts) {
+            int[] result = new int[starts.length - 1];
+            for (int i = 0; i < result.length; i += 1) {
+                ByteBuffer line = ByteBuffer.wrap(text, starts[i],
+                                                  starts[i + 1] - starts[i]);
+                Integer n = _numbers.get(line);
+                if (n == null) {
+                    n = _numbers.size();
+                    _numbers.put(line, n);
+                }
+                result[i] = n;
+            }
+            return result;
+        }
+
+        /** Numbers of the lines seen so far. */
+        private final HashMap<ByteBuffer, Integer> _numbers;
+    }
+
+    /** Return the edits turning line numbers A into B, in order and not
+     *  touching one another. */
+    static List<Edit> diff(int[] a, int[] b) {
+        List<Edit> edits = new ArrayList<>();
+        histogram(a, 0, a.length, b, 0, b.length, 0, edits);
+        List<Edit> result = new ArrayList<>();
+        for (Edit edit : edits) {
+            Edit last = result.isEmpty() ? null
+                : result.get(result.size() - 1);
+            if (last != null && last.endA == edit.beginA
+                && last.endB == edit.beginB) {
+                result.set(result.size() - 1, new Edit(last.beginA,
+                    edit.endA, last.beginB, edit.endB));
+            } else {
+                result.add(edit);
+            }
+        }
+        return result;
+    }
+
+    /** Write to OUT the unified diff turning A, the contents of OLDNAME,
+     *  into B, the contents of NEWNAME; a missing version is null and
+     *  its name is /dev/null.  HEADER, such as a note of a rename, follows
+     *  the first line.  Binary files get a one-line notice, and equal
+     *  contents no hunks. */
+    static void unified(String oldName, String newName, String header,
+                        byte[] a, byte[] b, PrintStream out) {
+        String aName = a == null ? "/dev/null" : "a/" + oldName;
+        String bName = b == null ? "/dev/null" : "b/" + newName;
+        out.print("diff --git a/" + oldName + " b/" + newName + "\n");
+        if (a == null) {
+            out.print("new file\n");
+        } else if (b == null) {
+            out.print("deleted file\n");
+        }
+        out.print(header);
+        a = a == null ? new byte[0] : a;
+        b = b == null ? new byte[0] : b;
+        if (binary(a) || binary(b)) {
+            if (!Arrays.equals(a, b)) {
+                out.print("Binary files " + aName + " and " + bName
+                          + " differ\n");
+            }
+            return;
+        }
+        Lines numbering = new Lines();
+        int[] aStarts = Lines.starts(a), bStarts = Lines.starts(b);
+        int[] aLines = numbering.number(a, aStarts);
+        int[] bLines = numbering.number(b, bStarts);
+        List<Edit> edits = diff(aLines, bLines);
+        if (!edits.isEmpty()) {
+            out.print("--- " + aName + "\n+++ " + bName + "\n");
+        }
+        for (int first = 0; first < edits.size();) {
+            int last = first;
+            while (last + 1 < edits.size() && edits.get(last + 1).beginA
+                   - edits.get(last).endA <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int aLo = Math.max(0, edits.get(first).beginA - CONTEXT);
+            int aHi = Math.min(aLines.length,
+                               edits.get(last).endA + CONTEXT);
+            int bLo = edits.get(first).beginB
+                - (edits.get(first).beginA - aLo);
+            int bHi = edits.get(last).endB + (aHi - edits.get(last).endA);
+            out.print("@@ -" + range(aLo, aHi) + " +" + range(bLo, bHi)
+                      + " @@\n");
+            int i = aLo;
+            for (int k = first; k <= last; k += 1) {
+                Edit edit = edits.get(k);
+                lines(' ', a, aStarts, i, edit.beginA, out);
+                lines('-', a, aStarts, edit.beginA, edit.endA, out);
+                lines('+', b, bStarts, edit.beginB, edit.endB, out);
+                i = edit.endA;
+            }
+            lines(' ', a, aStarts, i, aHi, out);
+            first = last + 1;
+        }
+    }
+
+    /** Return the range of lines [LO, HI) as written in a hunk header. */
+    private static String range(int lo, int hi) {
+        if (hi - lo == 1) {
+            return Integer.toString(lo + 1);
+        }
+        return (hi == lo ? lo : lo + 1) + "," + (hi - lo);
+    }
+
+    /** Write to OUT lines [FROM, TO) of TEXT, whose lines start at
+     *  STARTS, each preceded by TAG. */
+    private static void lines(char tag, byte[] text, int[] starts, int from,
+                              int to, PrintStream out) {
+        for (int i = from; i < to; i += 1) {
+            out.write(tag);
+            out.write(text, starts[i], starts[i + 1] - starts[i]);
+            if (text[starts[i + 1] - 1] != '\n') {
+                out.write('\n');
+                out.write(NO_NEWLINE, 0, NO_NEWLINE.length);
+            }
+        }
+    }
+
+    /** Return true iff TEXT looks binary, having a NUL among its first
+     *  BINARY_PROBE bytes. */
+    static boolean binary(byte[] text) {
+        for (int i = 0; i < text.length && i < BINARY_PROBE; i += 1) {
+            if (text[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Add to OUT the edits turning A[ALO..AHI) into B[BLO..BHI), splitting
+     *  on rare common lines, DEPTH splits deep. */
+    private static void histogram(int[] a, int aLo, int aHi, int[] b,
+                                  int bLo, int bHi, int depth,
+                                  List<Edit> out) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                out.add(new Edit(aLo, aHi, bLo, bHi));
+            }
+            return;
+        }
+        if (depth >= MAX_DEPTH) {
+            myers(a, aLo, aHi, b, bLo, bHi, out);
+            return;
+        }
+        HashMap<Integer, List<Integer>> where = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            where.computeIfAbsent(a[i], x -> new ArrayList<>()).add(i);
+        }
+        int bestA = -1, bestB = -1, bestLength = 0;
+        int bestCount = MAX_CHAIN;
+        int candidates = 0;
+        for (int j = bLo; j < bHi && candidates < MAX_CANDIDATES; ) {
+            List<Integer> occurrences = where.get(b[j]);
+            int next = j + 1;
+            if (occurrences == null || occurrences.size() > bestCount) {
+                j = next;
+                continue;
+            }
+            for (int i : occurrences) {
+                int length = 0;
+                while (i + length < aHi && j + length < bHi
+                       && a[i + length] == b[j + length]) {
+                    length += 1;
+                }
+                if (occurrences.size() < bestCount || length > bestLength) {
+                    bestA = i;
+                    bestB = j;
+                    bestLength = length;
+                    bestCount = occurrences.size();
+                }
+                next = Math.max(next, j + length);
+                candidates += 1;
+            }
+            j = next;
+        }
+        if (bestA < 0) {
+            myers(a, aLo, aHi, b, bLo, bHi, out);
+            return;
+        }
+        histogram(a, aLo, bestA, b, bLo, bestB, depth + 1, out);
+        histogram(a, bestA + bestLength, aHi, b, bestB + bestLength, bHi,
+                  depth + 1, out);
+    }
+
+    /** Add to OUT the edits turning A[ALO..AHI) into B[BLO..BHI), found
+     *  by Myers' algorithm, dividing at the middle snake. */
+    private static void myers(int[] a, int aLo, int aHi, int[] b, int bLo,
+                              int bHi, List<Edit> out) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                out.add(new Edit(aLo, aHi, bLo, bHi));
+            }
+            return;
+        }
+        int[] split = middle(a, aLo, aHi, b, bLo, bHi);
+        if (split == null) {
+            out.add(new Edit(aLo, aHi, bLo, bHi));
+            return;
+        }
+        myers(a, aLo, split[0], b, bLo, split[1], out);
+        myers(a, split[0], aHi, b, split[1], bHi, out);
+    }
+
+    /** Return the point {x, y} at which a shortest edit script turning
+     *  A[ALO..AHI) into B[BLO..BHI) crosses the middle of its length,
+     *  found by running the forward and reverse searches towards each
+     *  other in space linear in the lengths, or null if there is none. */
+    private static int[] middle(int[] a, int aLo, int aHi, int[] b, int bLo,
+                                int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] forward = new int[length];
+        int[] reverse = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(reverse, -1);
+        forward[offset + 1] = 0;
+        reverse[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && forward[k - 1] < forward[k + 1])) {
+                    x1 = forward[k + 1];
+                } else {
+                    x1 = forward[k - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[k] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2 = offset + delta - k1;
+                    if (k2 >= 0 && k2 < length && reverse[k2] != -1
+                        && x1 >= n - reverse[k2]) {
+                        return new int[] {aLo + x1, bLo + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && reverse[k - 1] < reverse[k + 1])) {
+                    x2 = reverse[k + 1];
+                } else {
+                    x2 = reverse[k - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                reverse[k] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1 = offset + delta - k2;
+                    if (k1 >= 0 && k1 < length && forward[k1] != -1) {
+                        int x1 = forward[k1];
+                        int y1 = offset + x1 - k1;
+                        if (x1 >= n - x2) {
+                            return new int[] {aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Note following a line without a final newline. */
+    private static final byte[] NO_NEWLINE =
+        "\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+}
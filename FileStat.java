@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** The stat data of a working file: its size, modification time and
+ *  inode number.  If none of these changed since a file was hashed, its
+ *  contents are assumed unchanged too.
+ *  @author Yuqiong Ji.
+ */
+class FileStat implements Serializable {
+
+    /** Files modified less than this many nanoseconds before their stat
+     *  data was taken may be modified again without changing it. */
+    static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Stat data SIZE, MTIME (in nanoseconds) and INODE. */
+    FileStat(long size, long mtime, long inode) {
+        _size = size;
+        _mtime = mtime;
+        _inode = inode;
+        _taken = System.currentTimeMillis() * 1000000;
+    }
+
+    /** Return the stat data of FILE, or null if it cannot be read. */
+    static FileStat of(File file) {
+        try {
+            if (UNIX) {
+                Map<String, Object> attrs = Files.readAttributes(
+                    file.toPath(), "unix:size,lastModifiedTime,ino");
+                return new FileStat((Long) attrs.get("size"),
+                    nanos((FileTime) attrs.get("lastModifiedTime")),
+                    (Long) attrs.get("ino"));
+            }
+            BasicFileAttributes attrs = Files.readAttributes(
+                file.toPath(), BasicFileAttributes.class);
+            return new FileStat(attrs.size(),
+                                nanos(attrs.lastModifiedTime()), 0);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return true iff this stat data may be trusted to detect later
+     *  changes, i.e., the file was not modified just before it was
+     *  taken. */
+    boolean reliable() {
+        return _mtime < _taken - RACY_NANOS;
+    }
+
+    /** Return true iff OTHER describes the same file state as this. */
+    boolean matches(FileStat other) {
+        return other != null && _size == other._size
+            && _mtime == other._mtime && _inode == other._inode;
+    }
+
+    /** Return TIME in nanoseconds. */
+    private static long nanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    /** True iff the file system provides unix attributes. */
+    private static final boolean UNIX = FileSystems.getDefault()
+        .supportedFileAttributeViews().contains("unix");
+
+    /** Size in bytes. */
+    private final long _size;
+    /** Modification time in nanoseconds. */
+    private final long _mtime;
+    /** Inode number, or 0 if unknown. */
+    private final long _inode;
+    /** Time this stat data was taken, in nanoseconds. */
+    private final long _taken;
+}
@@ -0,0 +1,341 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** A write-ahead journal of the records written by a command.
+ *
+ *  A command adds the new contents of each record it changes (commit and
+ *  tree records, branch files, HEAD, the index) or its deletion to the
+ *  journal; commit appends them to the journal file as one transaction
+ *  and forces it to disk, which is the one fsync a command pays, and only
+ *  then installs the records, each by writing a temporary file and
+ *  renaming it over the old one.  A crash at any point thus leaves every
+ *  record either old or new, never torn, and a transaction that reached
+ *  the disk is replayed on the next start.
+ *
+ *  A transaction is a magic number, an entry count, the entries and a
+ *  CRC-32 of the count and entries; an entry is a flags byte, the path of
+ *  the record, its length (-1 for a deletion) and its contents.  A marker
+ *  file records how much of the journal has been installed, and on which
+ *  boot: after a system crash, installed records that had not yet been
+ *  forced may be lost, so the whole journal is replayed.  Once the
+ *  journal outgrows JOURNAL_LIMIT, its records are forced and it is
+ *  emptied.
+ *  @author Yuqiong Ji.
+ */
+class Journal {
+
+    /** Size past which the journal is checkpointed. */
+    static final long JOURNAL_LIMIT = 1 << 20;
+    /** Magic number starting each transaction. */
+    static final int TRANSACTION_MAGIC = 0x474c4a54;
+    /** Flag of entries for immutable records, such as commits, which are
+     *  written only if missing. */
+    static final int IMMUTABLE = 1;
+
+    /** A journal kept in FILE, with its marker next to it. */
+    Journal(File file) {
+        _file = file;
+        _marker = new File(file.getPath() + ".applied");
+        _entries = new ArrayList<>();
+    }
+
+    /** Add to the current transaction the new CONTENTS of record FILE,
+     *  which is IMMUTABLE if it is never rewritten once it exists. */
+    void add(File file, byte[] contents, boolean immutable) {
+        _entries.add(new Entry(file.getPath(), contents,
+                               immutable ? IMMUTABLE : 0));
+    }
+
+    /** Add to the current transaction the deletion of record FILE. */
+    void delete(File file) {
+        _entries.add(new Entry(file.getPath(), null, 0));
+    }
+
+    /** Make the current transaction durable, then install its records
+     *  and start a new transaction. */
+    void commit() {
+        if (_entries.isEmpty()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(_entries.size());
+            for (Entry entry : _entries) {
+                entry.write(out);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            long end;
+            try (FileOutputStream journal = new FileOutputStream(_file,
+                                                                 true)) {
+                DataOutputStream header = new DataOutputStream(journal);
+                header.writeInt(TRANSACTION_MAGIC);
+                bytes.writeTo(journal);
+                journal.getFD().sync();
+                end = journal.getChannel().position();
+            }
+            for (Entry entry : _entries) {
+                entry.install();
+            }
+            _entries.clear();
+            if (end > JOURNAL_LIMIT) {
+                checkpoint();
+            } else {
+                mark(end);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write journal: %s", excp.getMessage());
+        }
+    }
+
+    /** Install again the records of the transactions that reached the
+     *  journal but may not have been installed, and drop a torn
+     *  transaction at its end. */
+    void recover() {
+        if (!_file.exists()) {
+            return;
+        }
+        long start = installed();
+        if (start > _file.length()) {
+            start = 0;
+        }
+        if (start == _file.length()) {
+            return;
+        }
+        try {
+            long end = replay(start);
+            if (end < _file.length()) {
+                try (RandomAccessFile file = new RandomAccessFile(_file,
+                                                                  "rw")) {
+                    file.setLength(end);
+                }
+            }
+            mark(end);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot recover journal: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /** Force every record named in the journal to disk and empty the
+     *  journal. */
+    void checkpoint() {
+        if (!_file.exists()) {
+            return;
+        }
+        try {
+            LinkedHashSet<String> paths = new LinkedHashSet<>();
+            for (Entry entry : read(0, new long[1])) {
+                paths.add(entry._path);
+            }
+            LinkedHashSet<String> dirs = new LinkedHashSet<>();
+            for (String path : paths) {
+                File file = new File(path);
+                force(file);
+                if (file.getParent() != null) {
+                    dirs.add(file.getParent());
+                }
+            }
+            for (String dir : dirs) {
+                force(new File(dir));
+            }
+            try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+                file.setLength(0);
+                file.getFD().sync();
+            }
+            mark(0);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot checkpoint journal: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /** Install the records of the complete transactions from position
+     *  START of the journal on, returning the end of the last one. */
+    private long replay(long start) throws IOException {
+        long[] end = new long[1];
+        for (Entry entry : read(start, end)) {
+            entry.install();
+        }
+        return end[0];
+    }
+
+    /** Return the entries of the complete transactions from position
+     *  START of the journal on, setting END[0] to the end of the last
+     *  one. */
+    private List<Entry> read(long start, long[] end) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        end[0] = start;
+        try (FileInputStream file = new FileInputStream(_file)) {
+            file.getChannel().position(start);
+            DataInputStream in =
+                new DataInputStream(new BufferedInputStream(file));
+            while (true) {
+                List<Entry> transaction = new ArrayList<>();
+                long length = readTransaction(in, transaction,
+                                              _file.length());
+                if (length < 0) {
+                    break;
+                }
+                result.addAll(transaction);
+                end[0] += length;
+            }
+        }
+        return result;
+    }
+
+    /** Read one transaction from IN, a journal of SIZE bytes, into
+     *  ENTRIES and return its length, or return -1 if IN holds no
+     *  complete and intact transaction. */
+    private static long readTransaction(DataInputStream in,
+                                        List<Entry> entries, long size) {
+        try {
+            if (in.readInt() != TRANSACTION_MAGIC) {
+                return -1;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream copy = new DataOutputStream(bytes);
+            int count = in.readInt();
+            copy.writeInt(count);
+            for (int i = 0; i < count; i += 1) {
+                Entry entry = Entry.read(in, size);
+                entry.write(copy);
+                entries.add(entry);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            if (in.readInt() != (int) crc.getValue()) {
+                return -1;
+            }
+            return 4 + bytes.size() + 4;
+        } catch (IOException | RuntimeException excp) {
+            return -1;
+        }
+    }
+
+    /** Return the position up to which the journal is known to be
+     *  installed on this boot. */
+    private long installed() {
+        if (!_marker.isFile()) {
+            return 0;
+        }
+        String[] fields = Utils.readContentsAsString(_marker).split(" ", 2);
+        try {
+            if (fields.length == 2 && fields[1].equals(bootId())) {
+                return Long.parseLong(fields[0]);
+            }
+        } catch (NumberFormatException excp) {
+            return 0;
+        }
+        return 0;
+    }
+
+    /** Record that the journal is installed up to position END. */
+    private void mark(long end) {
+        Utils.writeAtomically(_marker, end + " " + bootId());
+    }
+
+    /** Return an identifier of the current boot of the system, or "" if
+     *  it has none. */
+    private static String bootId() {
+        File id = new File("/proc/sys/kernel/random/boot_id");
+        return id.isFile() ? Utils.readContentsAsString(id).trim() : "";
+    }
+
+    /** Force FILE, which may be a directory, to disk if it exists. */
+    static void force(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** One record written or deleted by a transaction. */
+    private static class Entry {
+
+        /** An entry writing CONTENTS, or deleting if it is null, to the
+         *  record at PATH, with FLAGS. */
+        Entry(String path, byte[] contents, int flags) {
+            _path = path;
+            _contents = contents;
+            _flags = flags;
+        }
+
+        /** Return the entry read from IN, a journal of SIZE bytes. */
+        static Entry read(DataInputStream in, long size) throws IOException {
+            int flags = in.readByte();
+            String path = in.readUTF();
+            int length = in.readInt();
+            if (length < -1 || length > size) {
+                throw new IOException("bad entry length");
+            }
+            byte[] contents = null;
+            if (length >= 0) {
+                contents = new byte[length];
+                in.readFully(contents);
+            }
+            return new Entry(path, contents, flags);
+        }
+
+        /** Write this entry to OUT. */
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(_flags);
+            out.writeUTF(_path);
+            if (_contents == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(_contents.length);
+                out.write(_contents);
+            }
+        }
+
+        /** Install this entry's record. */
+        void install() {
+            File file = new File(_path);
+            if (_contents == null) {
+                file.delete();
+            } else if ((_flags & IMMUTABLE) == 0 || !file.exists()) {
+                if (file.getParentFile() != null) {
+                    file.getParentFile().mkdirs();
+                }
+                Utils.writeAtomically(file, _contents);
+            }
+        }
+
+        /** Path of the record. */
+        private final String _path;
+        /** New contents, or null for a deletion. */
+        private final byte[] _contents;
+        /** Flags of the entry. */
+        private final int _flags;
+    }
+
+    /** The journal file. */
+    private final File _file;
+    /** The file recording how much of _file is installed. */
+    private final File _marker;
+    /** Entries of the current transaction. */
+    private final List<Entry> _entries;
+}
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/** Three-way merges of file contents, line by line.
+ *
+ *  The edits turning the base into each side are found by Diff.  Edits
+ *  of the two sides that overlap or touch in the base form one chunk; a
+ *  chunk changed by one side only, or identically by both, is taken as
+ *  is, and any other chunk is a conflict, written between markers with
+ *  the current side first.  Lines outside the chunks are copied from the
+ *  base, so the conflicts cover only the lines the sides disagree on.
+ *  Binary contents have no lines to merge: if any version is binary,
+ *  the whole file is one conflict.
+ *  @author Yuqiong Ji.
+ */
+class LineMerge {
+
+    /** Marker opening a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    /** Marker between the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+    /** Marker closing a conflict. */
+    static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    /** Merge the changes from BASE to OURS and from BASE to THEIRS,
+     *  writing the result to OUT and returning the number of conflicts
+     *  in it. */
+    static int merge(byte[] base, byte[] ours, byte[] theirs,
+                     ByteArrayOutputStream out) {
+        if (Diff.binary(base) || Diff.binary(ours) || Diff.binary(theirs)) {
+            out.writeBytes(OURS_MARKER.getBytes());
+            out.writeBytes(ours);
+            out.writeBytes(SEPARATOR.getBytes());
+            out.writeBytes(theirs);
+            out.writeBytes(THEIRS_MARKER.getBytes());
+            return 1;
+        }
+        LineMerge merge = new LineMerge(base, ours, theirs, out);
+        merge.run();
+        return merge._conflicts;
+    }
+
+    /** A merge of BASE, OURS and THEIRS writing to OUT. */
+    private LineMerge(byte[] base, byte[] ours, byte[] theirs,
+                      ByteArrayOutputStream out) {
+        _texts = new byte[][] {base, ours, theirs};
+        _starts = new int[3][];
+        _lines = new int[3][];
+        Diff.Lines numbering = new Diff.Lines();
+        for (int i = 0; i < 3; i += 1) {
+            _starts[i] = Diff.Lines.starts(_texts[i]);
+            _lines[i] = numbering.number(_texts[i], _starts[i]);
+        }
+        _out = out;
+    }
+
+    /** Write the merged text. */
+    private void run() {
+        List<Diff.Edit> ours = Diff.diff(_lines[BASE], _lines[OURS]);
+        List<Diff.Edit> theirs = Diff.diff(_lines[BASE], _lines[THEIRS]);
+        int i = 0, j = 0, copied = 0, oursDelta = 0, theirsDelta = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            int lo, hi;
+            if (j == theirs.size() || (i < ours.size()
+                && ours.get(i).beginA <= theirs.get(j).beginA)) {
+                lo = ours.get(i).beginA;
+            } else {
+                lo = theirs.get(j).beginA;
+            }
+            hi = lo;
+            int firstOurs = i, firstTheirs = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                while (i < ours.size() && ours.get(i).beginA <= hi) {
+                    hi = Math.max(hi, ours.get(i).endA);
+                    i += 1;
+                    grew = true;
+                }
+                while (j < theirs.size() && theirs.get(j).beginA <= hi) {
+                    hi = Math.max(hi, theirs.get(j).endA);
+                    j += 1;
+                    grew = true;
+                }
+            }
+            copy(BASE, copied, lo);
+            copied = hi;
+            int oursLo = lo + oursDelta, theirsLo = lo + theirsDelta;
+            oursDelta += delta(ours, firstOurs, i);
+            theirsDelta += delta(theirs, firstTheirs, j);
+            int oursHi = hi + oursDelta, theirsHi = hi + theirsDelta;
+            if (firstTheirs == j) {
+                copy(OURS, oursLo, oursHi);
+            } else if (firstOurs == i
+                       || same(oursLo, oursHi, theirsLo, theirsHi)) {
+                copy(THEIRS, theirsLo, theirsHi);
+            } else {
+                _out.writeBytes(OURS_MARKER.getBytes());
+                copy(OURS, oursLo, oursHi);
+                _out.writeBytes(SEPARATOR.getBytes());
+                copy(THEIRS, theirsLo, theirsHi);
+                _out.writeBytes(THEIRS_MARKER.getBytes());
+                _conflicts += 1;
+            }
+        }
+        copy(BASE, copied, _lines[BASE].length);
+    }
+
+    /** Return the change in length made by EDITS[FROM..TO). */
+    private static int delta(List<Diff.Edit> edits, int from, int to) {
+        int result = 0;
+        for (int k = from; k < to; k += 1) {
+            Diff.Edit edit = edits.get(k);
+            result += (edit.endB - edit.beginB) - (edit.endA - edit.beginA);
+        }
+        return result;
+    }
+
+    /** Return true iff lines [OURSLO, OURSHI) of ours equal lines
+     *  [THEIRSLO, THEIRSHI) of theirs. */
+    private boolean same(int oursLo, int oursHi, int theirsLo,
+                         int theirsHi) {
+        if (oursHi - oursLo != theirsHi - theirsLo) {
+            return false;
+        }
+        for (int k = 0; k < oursHi - oursLo; k += 1) {
+            if (_lines[OURS][oursLo + k] != _lines[THEIRS][theirsLo + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write lines [FROM, TO) of text WHICH. */
+    private void copy(int which, int from, int to) {
+        if (from < to) {
+            _out.write(_texts[which], _starts[which][from],
+                       _starts[which][to] - _starts[which][from]);
+        }
+    }
+
+    /** Indices of the base, current and given texts. */
+    private static final int BASE = 0, OURS = 1, THEIRS = 2;
+
+    /** The base, current and given texts. */
+    private final byte[][] _texts;
+    /** Offsets of the lines of each text. */
+    private final int[][] _starts;
+    /** Numbers of the lines of each text. */
+    private final int[][] _lines;
+    /** Where the merged text is written. */
+    private final ByteArrayOutputStream _out;
+    /** Conflicts written so far. */
+    private int _conflicts;
+}
@@ -13,48 +13,73 @@ public class Main {
 
     /** Main metadata folder. */
     static final File GIT_FOLDER = new File(".gitlet");
-    /** Main folder. */
-    private static File dir = Utils.join(GIT_FOLDER, "gitlet");
 
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....  If a daemon serves this repository,
+     *  the command is run there instead. */
     public static void main(String[] args) throws IOException {
-        Command repo = dir.exists() ? Utils.readObject(dir, Command.class)
-                : new Command();
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
         }
+        if (args[0].equals("daemon")) {
+            Daemon.main(args);
+            return;
+        } else if (args[0].equals("batch")) {
+            try {
+                Script.main(args);
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+            return;
+        }
+        if (Daemon.forward(args)) {
+            return;
+        }
+        Command repo = new Command();
+        try {
+            execute(repo, args);
+            repo.save();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+        repo.reportCache();
+    }
+
+    /** Run the command ARGS against REPO.  A command that fails throws
+     *  a GitletException whose message is to be printed, leaving REPO
+     *  not to be saved. */
+    static void execute(Command repo, String[] args) throws IOException {
         switch (args[0]) {
         case "init":
             if (args.length > 1) {
-                System.out.println("Incorrect operands."); System.exit(0);
+                throw Utils.error("Incorrect operands.");
             } else {
                 repo.init();
             }
             break;
         case "add":
-            repo.add(args[1]);
+            repo.add(args);
             break;
         case "commit":
             repo.commit(args); break;
         case "rm":
+            operands(args, 2);
             repo.remove(args[1]);
             break;
         case "log":
-            repo.log();
+            repo.log(args);
             break;
         case "global-log":
-            repo.globalLog();
+            repo.globalLog(args);
             break;
         case "find":
-            repo.find(args[1]);
+            repo.find(args);
             break;
         case "status":
             if (repo.gethead() == null) {
-                System.out.println("Not in an initialized Gitlet directory.");
-                System.exit(0);
+                throw Utils.error("Not in an initialized Gitlet directory.");
             } else {
                 repo.status();
             }
@@ -63,21 +88,37 @@ public class Main {
             repo.checkout(args);
             break;
         case "branch":
+            operands(args, 2);
             repo.branch(args);
             break;
         case "rm-branch":
+            operands(args, 2);
             repo.rmbranch(args[1]);
             break;
         case "reset":
+            operands(args, 2);
             repo.reset(args[1]);
             break;
         case "merge":
+            operands(args, 2);
             repo.merge(args[1]); break;
+        case "diff":
+            repo.diff(args);
+            break;
+        case "gc":
+            repo.gc();
+            break;
         default:
             System.out.println("No command with that name exists.");
             break;
         }
-        Utils.writeObject(dir, repo);
+    }
+
+    /** Check that ARGS, a command and its operands, has N words. */
+    private static void operands(String[] args, int n) {
+        if (args.length != n) {
+            throw Utils.error("Incorrect operands.");
+        }
     }
 }
 
@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Lowest common ancestors in the commit graph.  Walks follow every
+ *  parent of a commit, visiting commits in decreasing order of
+ *  generation number (one more than the largest generation of its
+ *  parents), so a walk can stop as soon as nothing left to visit can
+ *  reach an undiscovered common ancestor.  The walk keeps count of the
+ *  commits queued that are not yet known to be stale, so deciding
+ *  whether to stop takes constant time however wide the history.
+ *  @author Yuqiong Ji.
+ */
+class MergeBase {
+
+    /** Marks commits reachable from the first commit. */
+    private static final int FIRST = 1;
+    /** Marks commits reachable from the second commit. */
+    private static final int SECOND = 2;
+    /** Marks commits reachable from a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** An engine reading commits from STORE. */
+    MergeBase(ObjectStore store) {
+        _store = store;
+    }
+
+    /** Return the best common ancestors of commits A and B: those common
+     *  ancestors that are not ancestors of another common ancestor.
+     *  There is usually one, but criss-cross merges may produce several;
+     *  they are returned by decreasing generation, ties broken by id. */
+    List<String> find(String a, String b) {
+        if (a.equals(b)) {
+            List<String> result = new ArrayList<>();
+            result.add(a);
+            return result;
+        }
+        HashMap<String, Integer> flags = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>(this::compare);
+        HashSet<String> queued = new HashSet<>();
+        flags.put(a, FIRST);
+        flags.put(b, SECOND);
+        queue.add(a);
+        queue.add(b);
+        queued.add(a);
+        queued.add(b);
+        int active = 2;
+        List<String> found = new ArrayList<>();
+        while (active > 0) {
+            String id = queue.poll();
+            queued.remove(id);
+            int mark = flags.get(id) & (FIRST | SECOND | STALE);
+            if ((mark & STALE) == 0) {
+                active -= 1;
+            }
+            if (mark == (FIRST | SECOND)) {
+                if (!found.contains(id)) {
+                    found.add(id);
+                }
+                mark |= STALE;
+            }
+            for (String parent : parents(id)) {
+                int old = flags.getOrDefault(parent, 0);
+                int now = old | mark;
+                if (now == old) {
+                    continue;
+                }
+                flags.put(parent, now);
+                if (queued.add(parent)) {
+                    queue.add(parent);
+                    if ((now & STALE) == 0) {
+                        active += 1;
+                    }
+                } else if ((old & STALE) == 0 && (now & STALE) != 0) {
+                    active -= 1;
+                }
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String candidate : found) {
+            if ((flags.get(candidate) & STALE) == 0
+                && !reachesOther(candidate, found)) {
+                result.add(candidate);
+            }
+        }
+        result.sort(this::compare);
+        return result;
+    }
+
+    /** Return true iff commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors.  The walk never visits commits whose generation is
+     *  below that of ANCESTOR. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int floor = generation(ancestor);
+        HashMap<String, Integer> seen = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>(this::compare);
+        queue.add(descendant);
+        seen.put(descendant, 0);
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            if (id.equals(ancestor)) {
+                return true;
+            }
+            for (String parent : parents(id)) {
+                if (generation(parent) >= floor
+                    && seen.put(parent, 0) == null) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff some commit of OTHERS other than CANDIDATE has
+     *  CANDIDATE as an ancestor. */
+    private boolean reachesOther(String candidate, List<String> others) {
+        for (String other : others) {
+            if (!other.equals(candidate) && isAncestor(candidate, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Order commits A and B by decreasing generation, then by id. */
+    private int compare(String a, String b) {
+        int c = Integer.compare(generation(b), generation(a));
+        return c != 0 ? c : a.compareTo(b);
+    }
+
+    /** Return the parent ids of commit ID. */
+    private List<String> parents(String id) {
+        return _store.parents(id);
+    }
+
+    /** Return the generation number of commit ID. */
+    private int generation(String id) {
+        return _store.generation(id);
+    }
+
+    /** Where commits are read from. */
+    private final ObjectStore _store;
+}
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/** An inverted index of commit messages, kept as append-only posting
+ *  files named by the hash of their key: one per distinct message,
+ *  listing the ids of the commits with exactly that message, and one
+ *  per word, listing the ids of the commits whose message contains it.
+ *  A vocabulary file lists every word once, for prefix queries.  Each
+ *  commit appends to the files of its message and words, so lookups
+ *  read only the postings they need.  The appends do not go through
+ *  the journal, so after a crash a posting may name a commit that was
+ *  never installed; callers drop the ids the store does not hold.
+ *  @author Yuqiong Ji.
+ */
+class MessageIndex {
+
+    /** An index kept in DIR. */
+    MessageIndex(File dir) {
+        _dir = dir;
+        _exact = Utils.join(dir, "exact");
+        _words = Utils.join(dir, "words");
+        _vocabulary = Utils.join(dir, "vocabulary");
+    }
+
+    /** Return true iff this index has been created. */
+    boolean exists() {
+        return _dir.isDirectory();
+    }
+
+    /** Add COMMIT to this index. */
+    void add(Commit commit) {
+        String id = commit.getindex();
+        append(posting(_exact, commit.getMsg()), id);
+        for (String word : words(commit.getMsg())) {
+            File posting = posting(_words, word);
+            if (!posting.exists()) {
+                append(_vocabulary, word);
+            }
+            append(posting, id);
+        }
+    }
+
+    /** Return the ids of the commits whose message is MSG, oldest
+     *  first. */
+    List<String> exact(String msg) {
+        return read(posting(_exact, msg));
+    }
+
+    /** Return the ids of the commits whose message contains WORD,
+     *  ignoring case, oldest first. */
+    List<String> word(String word) {
+        return read(posting(_words, word.toLowerCase(Locale.ROOT)));
+    }
+
+    /** Return the ids of the commits whose message contains a word
+     *  starting with PREFIX, ignoring case. */
+    List<String> prefix(String prefix) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String word : read(_vocabulary)) {
+            if (word.startsWith(key)) {
+                result.addAll(read(posting(_words, word)));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the distinct words of MSG, in lower case. */
+    static LinkedHashSet<String> words(String msg) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String word : msg.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Return the posting file of KEY under DIR. */
+    private static File posting(File dir, String key) {
+        String hash = Utils.sha1(key);
+        return Utils.join(dir, hash.substring(0, ObjectStore.FANOUT),
+                          hash.substring(ObjectStore.FANOUT));
+    }
+
+    /** Return the distinct lines of FILE, in order, or none if FILE does
+     *  not exist. */
+    private static List<String> read(File file) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        if (file.isFile()) {
+            for (String line : Utils.readContentsAsString(file).split("\n")) {
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Append LINE to FILE, creating it if needed. */
+    private static void append(File file, String line) {
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(),
+                        (line + "\n").getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Directory of the index. */
+    private final File _dir;
+    /** Directory of the exact-message postings. */
+    private final File _exact;
+    /** Directory of the word postings. */
+    private final File _words;
+    /** Vocabulary file. */
+    private final File _vocabulary;
+}
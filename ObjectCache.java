@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A cache of objects read from the store, bounded by their total
+ *  weight, an estimate of the bytes each holds.  The least recently used
+ *  objects are evicted once the weights exceed the budget; an object
+ *  heavier than a MAX_SHARE'th of the budget is not kept at all, so one
+ *  large blob cannot flush everything else.  Counts of hits, misses and
+ *  evictions are kept for tuning the budget.
+ *
+ *  The budget, in megabytes, is taken from the gitlet.cache property or
+ *  the GITLET_CACHE environment variable, DEFAULT_BUDGET otherwise.
+ *  Setting gitlet.cache.stats or GITLET_CACHE_STATS prints the counts on
+ *  the standard error after each command.  All methods are synchronized,
+ *  as blobs are read by the worker pool.
+ *  @author Yuqiong Ji.
+ */
+class ObjectCache {
+
+    /** Default budget, in bytes. */
+    static final long DEFAULT_BUDGET = 64L << 20;
+    /** Objects heavier than the budget divided by this are not
+     *  cached. */
+    static final int MAX_SHARE = 8;
+
+    /** A cache holding objects weighing up to BUDGET bytes in all. */
+    ObjectCache(long budget) {
+        _budget = budget;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Return the budget configured for caches, in bytes. */
+    static long budget() {
+        String value = System.getProperty("gitlet.cache",
+                                          System.getenv("GITLET_CACHE"));
+        try {
+            if (value != null && Long.parseLong(value) >= 0) {
+                return Long.parseLong(value) << 20;
+            }
+        } catch (NumberFormatException excp) {
+            return DEFAULT_BUDGET;
+        }
+        return DEFAULT_BUDGET;
+    }
+
+    /** Return true iff the counts are to be printed after each
+     *  command. */
+    static boolean reporting() {
+        return System.getProperty("gitlet.cache.stats") != null
+            || System.getenv("GITLET_CACHE_STATS") != null;
+    }
+
+    /** Return the object cached under KEY, or null, counting a hit or
+     *  a miss. */
+    synchronized Object get(String key) {
+        Entry entry = _entries.get(key);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return entry._value;
+    }
+
+    /** Cache VALUE under KEY, weighing WEIGHT bytes, evicting the least
+     *  recently used objects as needed. */
+    synchronized void put(String key, Object value, long weight) {
+        Entry old = _entries.remove(key);
+        if (old != null) {
+            _weight -= old._weight;
+        }
+        if (weight > _budget / MAX_SHARE) {
+            return;
+        }
+        _entries.put(key, new Entry(value, weight));
+        _weight += weight;
+        Iterator<Entry> oldest = _entries.values().iterator();
+        while (_weight > _budget && oldest.hasNext()) {
+            _weight -= oldest.next()._weight;
+            oldest.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** Cache VALUE under KEY again, now weighing WEIGHT bytes, if it is
+     *  the object cached under KEY. */
+    synchronized void reweigh(String key, Object value, long weight) {
+        Entry entry = _entries.get(key);
+        if (entry != null && entry._value == value) {
+            put(key, value, weight);
+        }
+    }
+
+    /** Return the total weight of the cached objects. */
+    synchronized long weight() {
+        return _weight;
+    }
+
+    /** Return a one-line summary of the use of this cache. */
+    synchronized String stats() {
+        long lookups = _hits + _misses;
+        return String.format("cache: %d objects, %d of %d bytes, %d hits,"
+                             + " %d misses (%d%% hit), %d evictions",
+                             _entries.size(), _weight, _budget, _hits,
+                             _misses, lookups == 0 ? 0 : _hits * 100
+                             / lookups, _evictions);
+    }
+
+    /** A cached object and its weight. */
+    private static class Entry {
+        /** An entry for VALUE, weighing WEIGHT bytes. */
+        Entry(Object value, long weight) {
+            _value = value;
+            _weight = weight;
+        }
+
+        /** The cached object. */
+        private final Object _value;
+        /** Its weight in bytes. */
+        private final long _weight;
+    }
+
+    /** Most bytes the cached objects may weigh. */
+    private final long _budget;
+    /** Cached objects by key, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries;
+    /** Total weight of the cached objects. */
+    private long _weight;
+    /** Lookups that found their object. */
+    private long _hits;
+    /** Lookups that did not. */
+    private long _misses;
+    /** Objects evicted to make room. */
+    private long _evictions;
+}
@@ -0,0 +1,514 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/** Content-addressed store of commit and tree records and of blobs.
+ *  New commits and trees are serialized loose, one file per record named
+ *  by its id and fanned out into subdirectories by the first two hex
+ *  digits; new blobs are written loose, one file per version.  repack
+ *  gathers everything into one compressed pack whose memory-mapped index
+ *  resolves full and abbreviated ids by binary search.  Records and blobs
+ *  read or written are kept in a size-bounded ObjectCache.
+ *  @author Yuqiong Ji.
+ */
+class ObjectStore {
+
+    /** Length of the fan-out directory prefix of an id. */
+    static final int FANOUT = 2;
+    /** Longest chain of deltas repack builds to reach a blob. */
+    static final int MAX_DEPTH = 10;
+    /** Matches the hexadecimal numerals that may abbreviate an id. */
+    private static final Pattern HEX = Pattern.compile("[0-9a-f]{0,40}");
+    /** Estimated bytes held by a cached commit, besides the entries of
+     *  its file map. */
+    private static final long COMMIT_WEIGHT = 1024;
+    /** Estimated bytes held by a cached tree, and by each of its
+     *  entries. */
+    private static final long TREE_WEIGHT = 128, ENTRY_WEIGHT = 160;
+    /** Estimated bytes held by a cached blob besides its contents. */
+    private static final long BLOB_WEIGHT = 64;
+
+    /** A store keeping commits in COMMITS, trees in TREES, loose blobs in
+     *  BLOBS, packs in PACKS and its commit graph in GRAPH, caching
+     *  objects up to the configured budget. */
+    ObjectStore(File commits, File trees, File blobs, File packs,
+                File graph) {
+        this(commits, trees, blobs, packs, graph, ObjectCache.budget());
+    }
+
+    /** As for ObjectStore(COMMITS, TREES, BLOBS, PACKS, GRAPH), caching
+     *  objects weighing up to BUDGET bytes. */
+    ObjectStore(File commits, File trees, File blobs, File packs,
+                File graph, long budget) {
+        _commitDir = commits;
+        _treeDir = trees;
+        _blobDir = blobs;
+        _packDir = packs;
+        _graphFile = graph;
+        _cache = new ObjectCache(budget);
+        _written = new LinkedHashMap<>();
+        _newBlobs = new ArrayList<>();
+    }
+
+    /** Add the records written since the last call to JOURNAL, making
+     *  them durable when it commits.  Loose blobs need no journaling, as
+     *  they are never rewritten, but the records about to name them must
+     *  not reach the disk first: the blobs written since the last call
+     *  are forced here, together, on the worker pool, followed by their
+     *  directory. */
+    void journal(Journal journal) {
+        List<File> blobs;
+        synchronized (_newBlobs) {
+            blobs = new ArrayList<>(_newBlobs);
+            _newBlobs.clear();
+        }
+        if (!blobs.isEmpty()) {
+            WorkTree.forEach(blobs.size(), i -> Journal.force(blobs.get(i)));
+            Journal.force(_blobDir);
+        }
+        for (Map.Entry<File, byte[]> record : _written.entrySet()) {
+            journal.add(record.getKey(), record.getValue(), true);
+        }
+        _written.clear();
+    }
+
+    /** Return the commit with full id ID, or null if there is none. */
+    Commit readCommit(String id) {
+        Commit result = (Commit) _cache.get("c" + id);
+        if (result == null) {
+            result = read(_commitDir, id, Commit.class);
+            if (result != null) {
+                result.attach(this);
+                _cache.put("c" + id, result, weight(result));
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff the commit with full id ID is stored. */
+    boolean hasCommit(String id) {
+        return objectFile(_commitDir, id).isFile() || packFor(id) != null;
+    }
+
+    /** Write COMMIT, whose id has been set, to the store unless it is
+     *  already there. */
+    void writeCommit(Commit commit) {
+        _cache.put("c" + commit.getindex(), commit, weight(commit));
+        write(_commitDir, commit.getindex(), commit);
+    }
+
+    /** Return the parent ids of commit ID, taken from the commit graph
+     *  when it covers ID. */
+    List<String> parents(String id) {
+        List<String> result = new ArrayList<>();
+        int k = graph().find(id);
+        if (k >= 0) {
+            for (int i = 0; i < graph().parentCount(k); i += 1) {
+                result.add(graph().id(graph().parent(k, i)));
+            }
+        } else if (readCommit(id).getParent() != null) {
+            result.addAll(readCommit(id).getParent());
+        }
+        return result;
+    }
+
+    /** Return the generation number of commit ID, taken from the commit
+     *  graph when it covers ID. */
+    int generation(String id) {
+        int k = graph().find(id);
+        return k >= 0 ? graph().generation(k)
+            : readCommit(id).getGeneration();
+    }
+
+    /** Return the commit time of commit ID in milliseconds, taken from
+     *  the commit graph when it covers ID. */
+    long timestamp(String id) {
+        int k = graph().find(id);
+        return k >= 0 ? graph().time(k) : readCommit(id).getTimestamp();
+    }
+
+    /** Forget the packs and commit graph opened so far, so that they
+     *  are opened again on next use, after another process changed
+     *  them.  Records already read stay valid, being named by their
+     *  contents. */
+    void refresh() {
+        _packs = null;
+        _graph = null;
+    }
+
+    /** Return the object cache. */
+    ObjectCache cache() {
+        return _cache;
+    }
+
+    /** Return a summary of the use of the object cache. */
+    String cacheStats() {
+        return _cache.stats();
+    }
+
+    /** Return the commit graph, mapping it on first use. */
+    private CommitGraph graph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(_graphFile);
+        }
+        return _graph;
+    }
+
+    /** Return the tree with id ID, or null if there is none. */
+    Tree readTree(String id) {
+        Tree result = (Tree) _cache.get("t" + id);
+        if (result == null) {
+            result = read(_treeDir, id, Tree.class);
+            if (result != null) {
+                _cache.put("t" + id, result, weight(result));
+            }
+        }
+        return result;
+    }
+
+    /** Write TREE to the store unless it is already there. */
+    void writeTree(Tree tree) {
+        _cache.put("t" + tree.id(), tree, weight(tree));
+        write(_treeDir, tree.id(), tree);
+    }
+
+    /** Weigh COMMIT again in the cache, if it is cached, once it has
+     *  built its map of files, which may hold far more than the rest of
+     *  it. */
+    void flattened(Commit commit) {
+        _cache.reweigh("c" + commit.getindex(), commit, weight(commit));
+    }
+
+    /** Return the estimated bytes held by COMMIT. */
+    private static long weight(Commit commit) {
+        return COMMIT_WEIGHT + ENTRY_WEIGHT * commit.flattenedSize();
+    }
+
+    /** Return the estimated bytes held by TREE. */
+    private static long weight(Tree tree) {
+        return TREE_WEIGHT
+            + ENTRY_WEIGHT * (tree.blobs().size() + tree.trees().size());
+    }
+
+    /** Return the contents of the blob with id ID, which may be shared
+     *  through the cache and must not be modified. */
+    byte[] readBlob(String id) {
+        byte[] result = (byte[]) _cache.get("b" + id);
+        if (result != null) {
+            return result;
+        }
+        File loose = Utils.join(_blobDir, id);
+        if (loose.isFile()) {
+            result = Utils.readContents(loose);
+        } else {
+            Pack pack = packFor(id);
+            if (pack == null) {
+                throw Utils.error("Missing blob %s.", id);
+            }
+            result = pack.read(id);
+        }
+        _cache.put("b" + id, result, BLOB_WEIGHT + result.length);
+        return result;
+    }
+
+    /** Write the contents of the blob with id ID to TO, creating its
+     *  directory if needed.  A loose blob that is not cached is copied
+     *  as a stream, without being held in memory. */
+    void checkoutBlob(String id, File to) {
+        if (to.getParentFile() != null) {
+            to.getParentFile().mkdirs();
+        }
+        byte[] cached = (byte[]) _cache.get("b" + id);
+        File loose = Utils.join(_blobDir, id);
+        if (cached != null) {
+            Utils.writeContents(to, cached);
+        } else if (loose.isFile()) {
+            Utils.copyContents(loose, to);
+        } else {
+            Utils.writeContents(to, readBlob(id));
+        }
+    }
+
+    /** Return true iff the blob with id ID is stored. */
+    boolean hasBlob(String id) {
+        return Utils.join(_blobDir, id).isFile() || packFor(id) != null;
+    }
+
+    /** Store the contents of FROM as a blob, unless it is already
+     *  stored, and return its id.  FROM is read once, hashed as it is
+     *  copied to a temporary file that is then renamed into place.  The
+     *  blob is forced to disk by the next call of journal. */
+    String writeBlob(File from) {
+        _blobDir.mkdirs();
+        File temp = Utils.join(_blobDir, "tmp-" + Thread.currentThread().getId()
+                               + "-" + System.nanoTime());
+        String id = Utils.sha1Copy(from, temp);
+        File blob = Utils.join(_blobDir, id);
+        if (hasBlob(id) || !temp.renameTo(blob)) {
+            temp.delete();
+        } else {
+            synchronized (_newBlobs) {
+                _newBlobs.add(blob);
+            }
+        }
+        return id;
+    }
+
+    /** Return the ids of all stored commits, in sorted order. */
+    List<String> commitIds() {
+        return findCommits("", Integer.MAX_VALUE);
+    }
+
+    /** Return the sorted ids of at most LIMIT stored commits starting
+     *  with PREFIX.  Loose commits are found by listing only the fan-out
+     *  directory of PREFIX when it is long enough to name one; packed
+     *  commits by binary search of the pack indices. */
+    List<String> findCommits(String prefix, int limit) {
+        TreeSet<String> result = new TreeSet<>();
+        if (!HEX.matcher(prefix).matches()) {
+            return new ArrayList<>();
+        }
+        List<String> dirs = new ArrayList<>();
+        if (prefix.length() >= FANOUT) {
+            dirs.add(prefix.substring(0, FANOUT));
+        } else if (_commitDir.list() != null) {
+            for (String name : _commitDir.list()) {
+                if (name.startsWith(prefix)) {
+                    dirs.add(name);
+                }
+            }
+        }
+        for (String sub : dirs) {
+            List<String> names =
+                Utils.plainFilenamesIn(Utils.join(_commitDir, sub));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String id = sub + name;
+                if (id.startsWith(prefix)) {
+                    result.add(id);
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            List<String> found = new ArrayList<>();
+            pack.findPrefix(prefix, Pack.COMMIT, found, limit);
+            result.addAll(found);
+        }
+        List<String> ids = new ArrayList<>(result);
+        return ids.size() > limit ? ids.subList(0, limit) : ids;
+    }
+
+    /** Gather all loose and packed objects into one new pack and delete
+     *  the old copies, then rewrite the commit graph to cover every
+     *  commit.  Versions of the same file name are ordered by decreasing
+     *  size and each is stored as a delta against the previous one when
+     *  that saves at least half its size. */
+    void repack() {
+        List<Pack> old = packs();
+        Pack.Writer writer = new Pack.Writer(_packDir);
+        HashMap<String, String> names = new HashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        List<String> commits = commitIds();
+        for (String id : commits) {
+            Commit commit = readCommit(id);
+            writer.add(id, Pack.COMMIT, Utils.serialize(commit));
+            collectNames(commit.getTree(), seen, names);
+        }
+        for (String id : seen) {
+            writer.add(id, Pack.TREE, Utils.serialize(readTree(id)));
+        }
+        HashMap<String, Long> sizes = new HashMap<>();
+        List<String> loose = new ArrayList<>();
+        if (Utils.plainFilenamesIn(_blobDir) != null) {
+            for (String id : Utils.plainFilenamesIn(_blobDir)) {
+                if (id.length() == Utils.UID_LENGTH
+                    && HEX.matcher(id).matches()) {
+                    loose.add(id);
+                    sizes.put(id, Utils.join(_blobDir, id).length());
+                }
+            }
+        }
+        for (Pack pack : old) {
+            for (String id : pack.ids(Pack.BLOB)) {
+                if (!sizes.containsKey(id)) {
+                    sizes.put(id, pack.size(id));
+                }
+            }
+        }
+        TreeMap<String, List<String>> groups = new TreeMap<>();
+        for (String id : sizes.keySet()) {
+            String name = names.getOrDefault(id, "");
+            groups.computeIfAbsent(name, k -> new ArrayList<>()).add(id);
+        }
+        HashMap<String, Integer> depth = new HashMap<>();
+        for (List<String> group : groups.values()) {
+            group.sort((a, b) -> sizes.get(a).equals(sizes.get(b))
+                       ? a.compareTo(b) : sizes.get(b).compareTo(sizes.get(a)));
+            String prevId = null;
+            byte[] prev = null;
+            for (String id : group) {
+                byte[] data = readBlob(id);
+                byte[] delta = null;
+                if (prev != null && depth.get(prevId) < MAX_DEPTH) {
+                    delta = Delta.create(prev, data);
+                }
+                if (delta != null && delta.length < data.length / 2) {
+                    writer.addDelta(id, Pack.BLOB, prevId, delta);
+                    depth.put(id, depth.get(prevId) + 1);
+                } else {
+                    writer.add(id, Pack.BLOB, data);
+                    depth.put(id, 0);
+                }
+                prevId = id;
+                prev = data;
+            }
+        }
+        Pack fresh = writer.finish();
+        for (Pack pack : old) {
+            if (fresh == null || !pack.name().equals(fresh.name())) {
+                pack.delete();
+            }
+        }
+        for (String id : loose) {
+            Utils.join(_blobDir, id).delete();
+        }
+        deleteLoose(_commitDir);
+        deleteLoose(_treeDir);
+        _packs = new ArrayList<>();
+        if (fresh != null) {
+            _packs.add(fresh);
+        }
+        CommitGraph.write(_graphFile, commits, this);
+        _graph = null;
+    }
+
+    /** Record in NAMES the file name of each blob reachable from the tree
+     *  with id TREE, skipping the trees in SEEN and adding TREE and its
+     *  subtrees to it. */
+    private void collectNames(String tree, HashSet<String> seen,
+                              HashMap<String, String> names) {
+        if (!seen.add(tree)) {
+            return;
+        }
+        Tree node = readTree(tree);
+        for (Map.Entry<String, String> entry : node.blobs().entrySet()) {
+            names.putIfAbsent(entry.getValue(), entry.getKey());
+        }
+        for (String sub : node.trees().values()) {
+            collectNames(sub, seen, names);
+        }
+    }
+
+    /** Delete the loose records under DIR and their fan-out
+     *  directories. */
+    private static void deleteLoose(File dir) {
+        String[] subs = dir.list();
+        if (subs == null) {
+            return;
+        }
+        for (String sub : subs) {
+            File subdir = Utils.join(dir, sub);
+            List<String> names = Utils.plainFilenamesIn(subdir);
+            if (names != null) {
+                for (String name : names) {
+                    Utils.join(subdir, name).delete();
+                }
+            }
+            subdir.delete();
+        }
+    }
+
+    /** Return the pack holding the object with id ID, or null. */
+    private Pack packFor(String id) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Return the packs of this store, mapping their indices on first
+     *  use. */
+    private synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> files = Utils.plainFilenamesIn(_packDir);
+            if (files != null) {
+                for (String name : files) {
+                    if (name.startsWith("pack-") && name.endsWith(".idx")) {
+                        _packs.add(new Pack(Utils.join(_packDir, name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Return the record with id ID of type T, loose under DIR or packed,
+     *  or null if there is none. */
+    private <T extends Serializable> T read(File dir, String id,
+                                            Class<T> type) {
+        File file = objectFile(dir, id);
+        if (file.isFile()) {
+            return Utils.readObject(file, type);
+        }
+        Pack pack = packFor(id);
+        if (pack == null) {
+            return null;
+        }
+        return Utils.deserialize(pack.read(id), type);
+    }
+
+    /** Write OBJ as the record with id ID under DIR, unless it exists,
+     *  and remember it for the journal. */
+    private void write(File dir, String id, Serializable obj) {
+        File file = objectFile(dir, id);
+        if (!file.exists() && packFor(id) == null) {
+            file.getParentFile().mkdirs();
+            byte[] bytes = Utils.serialize(obj);
+            Utils.writeAtomically(file, bytes);
+            _written.put(file, bytes);
+        }
+    }
+
+    /** Return the file holding the record with id ID under DIR. */
+    private static File objectFile(File dir, String id) {
+        return Utils.join(dir, id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+
+    /** Root directory of the commit records. */
+    private final File _commitDir;
+    /** Root directory of the tree records. */
+    private final File _treeDir;
+    /** Directory of loose blobs. */
+    private final File _blobDir;
+    /** Directory of packs. */
+    private final File _packDir;
+    /** Commit-graph file. */
+    private final File _graphFile;
+    /** The commit graph, or null if not yet mapped. */
+    private CommitGraph _graph;
+    /** Packs of this store, or null if not yet read. */
+    private List<Pack> _packs;
+    /** Commits, trees and blobs read or written by this process, under
+     *  their ids prefixed by "c", "t" or "b". */
+    private final ObjectCache _cache;
+    /** Records written since last journaled. */
+    private final LinkedHashMap<File, byte[]> _written;
+    /** Loose blobs written since last journaled, not yet forced. */
+    private final List<File> _newBlobs;
+}
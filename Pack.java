@@ -0,0 +1,368 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A pack: many objects stored compressed in one file, some of them as
+ *  deltas against another object of the same pack, with an index file
+ *  mapping object ids to their offsets in the pack.
+ *
+ *  The pack file is a header followed by entries, each holding an entry
+ *  type byte, the 20-byte id of its base (for deltas only), the inflated
+ *  size, the deflated size and the deflated bytes.  The index file holds
+ *  a header, a 256-entry fan-out table counting the ids whose first byte
+ *  is at most each value, the sorted 20-byte ids, their 8-byte offsets
+ *  and their one-byte object types.  The index is memory-mapped and
+ *  searched in place, so opening a pack costs nothing per object.
+ *  @author Yuqiong Ji.
+ */
+class Pack {
+
+    /** Type of an entry holding a whole blob. */
+    static final int BLOB = 1;
+    /** Type of an entry holding a delta against another entry. */
+    static final int DELTA = 2;
+    /** Type of an entry holding a serialized commit. */
+    static final int COMMIT = 3;
+    /** Type of an entry holding a serialized tree. */
+    static final int TREE = 4;
+    /** Magic number at the start of pack files. */
+    static final int PACK_MAGIC = 0x4750414b;
+    /** Magic number at the start of index files. */
+    static final int INDEX_MAGIC = 0x47494458;
+    /** Format version. */
+    static final int VERSION = 2;
+    /** Number of bytes in a binary id. */
+    static final int ID_BYTES = SortedIds.ID_BYTES;
+    /** Bytes before the fan-out table of an index. */
+    private static final int HEADER = 3 * 4;
+    /** Position of the first id in an index. */
+    private static final int IDS = HEADER + 4 * SortedIds.FANOUT;
+
+    /** The pack whose index file is INDEX. */
+    Pack(File index) {
+        _index = index;
+        String name = index.getName();
+        _pack = new File(index.getParentFile(),
+                name.substring(0, name.length() - ".idx".length())
+                + ".pack");
+        try (RandomAccessFile in = new RandomAccessFile(index, "r")) {
+            _map = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                       0, in.length());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack index %s.", index);
+        }
+        if (_map.getInt(0) != INDEX_MAGIC || _map.getInt(4) != VERSION) {
+            throw Utils.error("Bad pack index %s.", index);
+        }
+        _count = _map.getInt(2 * 4);
+        _ids = new SortedIds(_map, HEADER, IDS, _count);
+        _offsets = IDS + _count * ID_BYTES;
+        _types = _offsets + _count * 8;
+    }
+
+    /** Return true iff this pack holds the object with id ID. */
+    boolean contains(String id) {
+        return _ids.find(id) >= 0;
+    }
+
+    /** Return the number of objects in this pack. */
+    int count() {
+        return _count;
+    }
+
+    /** Return the id of the K-th object of this pack in id order. */
+    String id(int k) {
+        return _ids.id(k);
+    }
+
+    /** Return the object type of the K-th object of this pack. */
+    int type(int k) {
+        return _map.get(_types + k);
+    }
+
+    /** Return the ids of all objects of TYPE in this pack, sorted. */
+    List<String> ids(int type) {
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < _count; k += 1) {
+            if (type(k) == type) {
+                result.add(id(k));
+            }
+        }
+        return result;
+    }
+
+    /** Add to RESULT the ids of the objects of TYPE in this pack that
+     *  start with the hexadecimal PREFIX, stopping once RESULT has LIMIT
+     *  elements. */
+    void findPrefix(String prefix, int type, List<String> result,
+                    int limit) {
+        if (prefix.length() > Utils.UID_LENGTH) {
+            return;
+        }
+        for (int k = _ids.lowerBound(prefix);
+             k < _count && result.size() < limit;
+             k += 1) {
+            String id = id(k);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            if (type(k) == type) {
+                result.add(id);
+            }
+        }
+    }
+
+    /** Return the contents of the object with id ID, which this pack
+     *  must hold. */
+    byte[] read(String id) {
+        try (RandomAccessFile in = new RandomAccessFile(_pack, "r")) {
+            return read(in, offset(_ids.find(id)));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack %s.", _pack);
+        }
+    }
+
+    /** Return the size of the object with id ID, which this pack must
+     *  hold, without inflating it. */
+    long size(String id) {
+        try (RandomAccessFile in = new RandomAccessFile(_pack, "r")) {
+            in.seek(offset(_ids.find(id)));
+            if (in.readByte() == DELTA) {
+                in.skipBytes(ID_BYTES);
+            }
+            return in.readInt();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read pack %s.", _pack);
+        }
+    }
+
+    /** Return the name of this pack. */
+    String name() {
+        return _pack.getName();
+    }
+
+    /** Delete the files of this pack. */
+    void delete() {
+        _index.delete();
+        _pack.delete();
+    }
+
+    /** Return the offset in the pack file of the K-th object. */
+    private long offset(int k) {
+        return _map.getLong(_offsets + 8 * k);
+    }
+
+    /** Return the contents of the entry at OFFSET of IN, resolving delta
+     *  bases within this pack. */
+    private byte[] read(RandomAccessFile in, long offset) throws IOException {
+        in.seek(offset);
+        int type = in.readByte();
+        String base = null;
+        if (type == DELTA) {
+            byte[] raw = new byte[ID_BYTES];
+            in.readFully(raw);
+            base = Utils.toHex(raw);
+        }
+        int size = in.readInt();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        byte[] result = inflate(data, size);
+        if (base != null) {
+            result = Delta.apply(read(in, offset(_ids.find(base))), result);
+        }
+        return result;
+    }
+
+    /** Return DATA compressed. */
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[Utils.BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Return DATA decompressed to its original SIZE bytes.  Truncated
+     *  or corrupt DATA is reported rather than waited on. */
+    static byte[] inflate(byte[] data, int size) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        byte[] result = new byte[size];
+        try {
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int k = inflater.inflate(result, n, size - n);
+                if (k == 0 && (inflater.needsInput()
+                               || inflater.needsDictionary())) {
+                    throw Utils.error("Corrupt pack entry.");
+                }
+                n += k;
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt pack entry.");
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** Writes a new pack into a directory. */
+    static class Writer {
+
+        /** A writer of a new pack in DIR. */
+        Writer(File dir) {
+            _dir = dir;
+            _dir.mkdirs();
+            _temp = new File(dir, "tmp-" + System.nanoTime() + ".pack");
+            _offsets = new TreeMap<>();
+            _types = new TreeMap<>();
+            try {
+                _file = new FileOutputStream(_temp);
+                _out = new DataOutputStream(new BufferedOutputStream(_file));
+                _out.writeInt(PACK_MAGIC);
+                _out.writeInt(VERSION);
+                _position = 2 * 4;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write pack.");
+            }
+        }
+
+        /** Add object ID of TYPE with contents DATA. */
+        void add(String id, int type, byte[] data) {
+            write(id, type, type, null, data);
+        }
+
+        /** Add object ID of TYPE whose contents are DELTA applied to the
+         *  contents of object BASE, which is already in this pack. */
+        void addDelta(String id, int type, String base, byte[] delta) {
+            write(id, type, DELTA, base, delta);
+        }
+
+        /** Return true iff an object ID has been added. */
+        boolean contains(String id) {
+            return _offsets.containsKey(id);
+        }
+
+        /** Finish the pack and its index, force them to disk and return
+         *  the pack, or return null if no objects were added.  The
+         *  directory is forced after they are renamed into place, so
+         *  that the copies they replace may then be deleted. */
+        Pack finish() {
+            try {
+                _out.flush();
+                _file.getFD().sync();
+                _out.close();
+                if (_offsets.isEmpty()) {
+                    _temp.delete();
+                    return null;
+                }
+                String name = "pack-" + Utils.sha1(
+                    String.join("", _offsets.keySet()));
+                File index = new File(_dir, name + ".idx");
+                File tempIndex = new File(_dir, "tmp-" + name + ".idx");
+                writeIndex(tempIndex);
+                if (!_temp.renameTo(new File(_dir, name + ".pack"))
+                    || !tempIndex.renameTo(index)) {
+                    throw Utils.error("Cannot install pack %s.", name);
+                }
+                Journal.force(_dir);
+                return new Pack(index);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write pack.");
+            }
+        }
+
+        /** Write an entry of ENTRYTYPE for object ID of TYPE with delta
+         *  base BASE (or null) and payload DATA. */
+        private void write(String id, int type, int entryType, String base,
+                           byte[] data) {
+            try {
+                _offsets.put(id, _position);
+                _types.put(id, type);
+                byte[] packed = deflate(data);
+                _out.writeByte(entryType);
+                _position += 1;
+                if (base != null) {
+                    _out.write(SortedIds.fromHex(base));
+                    _position += ID_BYTES;
+                }
+                _out.writeInt(data.length);
+                _out.writeInt(packed.length);
+                _out.write(packed);
+                _position += 2 * 4 + packed.length;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write pack.");
+            }
+        }
+
+        /** Write the index of the added objects to FILE. */
+        private void writeIndex(File file) throws IOException {
+            FileOutputStream stream = new FileOutputStream(file);
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(stream))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_offsets.size());
+                SortedIds.write(out, _offsets.keySet());
+                for (long offset : _offsets.values()) {
+                    out.writeLong(offset);
+                }
+                for (Map.Entry<String, Integer> type : _types.entrySet()) {
+                    out.writeByte(type.getValue());
+                }
+                out.flush();
+                stream.getFD().sync();
+            }
+        }
+
+        /** Directory of the new pack. */
+        private final File _dir;
+        /** Pack file being written. */
+        private final File _temp;
+        /** File stream writing _temp. */
+        private FileOutputStream _file;
+        /** Buffered stream writing _file. */
+        private DataOutputStream _out;
+        /** Number of bytes written to _out. */
+        private long _position;
+        /** Offsets of the entries written so far, by id. */
+        private final TreeMap<String, Long> _offsets;
+        /** Object types of the entries written so far, by id. */
+        private final TreeMap<String, Integer> _types;
+    }
+
+    /** Index file. */
+    private final File _index;
+    /** Pack file. */
+    private final File _pack;
+    /** The mapped index file. */
+    private final MappedByteBuffer _map;
+    /** Number of objects in the pack. */
+    private final int _count;
+    /** The ids of the objects in the pack. */
+    private final SortedIds _ids;
+    /** Position of the offset table in the index. */
+    private final int _offsets;
+    /** Position of the type table in the index. */
+    private final int _types;
+}
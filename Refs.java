@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/** Branch references and the HEAD pointer.  Each branch lives in its own
+ *  file under the refs directory holding the id of its latest commit;
+ *  HEAD holds the name of the current branch.  Records are read when
+ *  first needed and only modified ones are written back.
+ *  @author Yuqiong Ji.
+ */
+class Refs {
+
+    /** Refs whose branch files are in DIR and whose HEAD is HEAD. */
+    Refs(File dir, File head) {
+        _dir = dir;
+        _headFile = head;
+        _heads = new HashMap<>();
+        _dirty = new HashSet<>();
+        _deleted = new HashSet<>();
+        if (_headFile.isFile()) {
+            _current = Utils.readContentsAsString(_headFile).split("\n")[0];
+        }
+        _savedCurrent = _current;
+    }
+
+    /** Return the name of the current branch, or null. */
+    String currentBranch() {
+        return _current;
+    }
+
+    /** Make BRANCH the current branch. */
+    void setCurrentBranch(String branch) {
+        _current = branch;
+    }
+
+    /** Return true iff a branch named NAME exists. */
+    boolean contains(String name) {
+        return !_deleted.contains(name)
+            && (_heads.containsKey(name) || branchFile(name).isFile());
+    }
+
+    /** Return the names of all branches, sorted. */
+    List<String> branches() {
+        HashSet<String> names = new HashSet<>(_heads.keySet());
+        List<String> onDisk = Utils.plainFilenamesIn(_dir);
+        if (onDisk != null) {
+            names.addAll(onDisk);
+        }
+        names.removeAll(_deleted);
+        List<String> result = new ArrayList<>(names);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the id of the latest commit of branch NAME, or null if
+     *  there is no such branch. */
+    String branchHead(String name) {
+        if (!contains(name)) {
+            return null;
+        }
+        String result = _heads.get(name);
+        if (result == null) {
+            String[] lines =
+                Utils.readContentsAsString(branchFile(name)).split("\n");
+            result = lines[lines.length - 1];
+            _heads.put(name, result);
+        }
+        return result;
+    }
+
+    /** Point branch NAME, creating it if needed, at commit ID. */
+    void setBranchHead(String name, String id) {
+        if (!id.equals(branchHead(name))) {
+            _deleted.remove(name);
+            _heads.put(name, id);
+            _dirty.add(name);
+        }
+    }
+
+    /** Delete branch NAME. */
+    void delete(String name) {
+        _heads.remove(name);
+        _dirty.remove(name);
+        _deleted.add(name);
+    }
+
+    /** Add the records changed since they were read to JOURNAL, which
+     *  writes them out when it commits. */
+    void save(Journal journal) {
+        _dir.mkdirs();
+        for (String name : _dirty) {
+            journal.add(branchFile(name), _heads.get(name).getBytes(
+                StandardCharsets.UTF_8), false);
+        }
+        for (String name : _deleted) {
+            journal.delete(branchFile(name));
+        }
+        _dirty.clear();
+        _deleted.clear();
+        if (_current != null && !_current.equals(_savedCurrent)) {
+            journal.add(_headFile, _current.getBytes(StandardCharsets.UTF_8),
+                        false);
+            _savedCurrent = _current;
+        }
+    }
+
+    /** Return the file of branch NAME. */
+    private File branchFile(String name) {
+        return Utils.join(_dir, name);
+    }
+
+    /** Directory of branch files. */
+    private final File _dir;
+    /** HEAD file. */
+    private final File _headFile;
+    /** Latest commit ids of the branches read or modified so far. */
+    private final HashMap<String, String> _heads;
+    /** Names of branches modified since being read. */
+    private final HashSet<String> _dirty;
+    /** Names of branches deleted since being read. */
+    private final HashSet<String> _deleted;
+    /** Current branch. */
+    private String _current;
+    /** Current branch as last read or written. */
+    private String _savedCurrent;
+}
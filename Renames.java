@@ -0,0 +1,313 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Detection of renamed and copied files among the changes between two
+ *  trees.
+ *
+ *  Added files whose blob id equals that of a deleted file are paired
+ *  with it first, preferring files with the same base name.  Those left
+ *  are compared, by content, with the deleted files left and with the
+ *  modified files: each file gets a MinHash signature of the hashes of
+ *  its lines (lines longer than CHUNK bytes counting as several), whose
+ *  agreement estimates the similarity of the two line sets.  Only pairs
+ *  whose signatures fall into a common bucket in some band are scored,
+ *  and no more than MAX_CANDIDATES of them, so the work stays bounded
+ *  however many files move.  Pairs at least MIN_SCORE percent alike are
+ *  taken best first; a deleted source taken once is a rename, any other
+ *  is a copy.  Empty files are never paired.
+ *  @author Yuqiong Ji.
+ */
+class Renames {
+
+    /** Lowest similarity, in percent, of a rename or copy. */
+    static final int MIN_SCORE = 50;
+    /** Number of hash functions of a signature. */
+    static final int SIGNATURE = 32;
+    /** Rows of the signature in each band. */
+    static final int ROWS = 2;
+    /** Signatures sharing a bucket with more than this many others are
+     *  not paired through it. */
+    static final int MAX_BUCKET = 64;
+    /** Most pairs of files whose contents are compared. */
+    static final int MAX_CANDIDATES = 100000;
+    /** Longest run of bytes hashed as one line. */
+    static final int CHUNK = 64;
+
+    /** A file found renamed or copied. */
+    static class Rename {
+        /** FROM renamed, or copied if COPY, to TO, SCORE percent
+         *  alike. */
+        Rename(String from, String to, int score, boolean copy) {
+            this.from = from;
+            this.to = to;
+            this.score = score;
+            this.copy = copy;
+        }
+
+        /** Paths of the source and of the new file. */
+        final String from, to;
+        /** Similarity of the two versions, in percent. */
+        final int score;
+        /** True iff the source is kept. */
+        final boolean copy;
+    }
+
+    /** Return the renames and copies among CHANGES, a map of paths to
+     *  their old and new blob ids (null where absent) as produced by
+     *  Tree.diff, reading contents from STORE, in order of new path.
+     *  With COPIES false, only renames are looked for. */
+    static List<Rename> detect(ObjectStore store,
+                               TreeMap<String, String[]> changes,
+                               boolean copies) {
+        return new Renames(store, changes, copies).run();
+    }
+
+    /** Detector of the renames among CHANGES, reading STORE, and of the
+     *  copies iff COPIES. */
+    private Renames(ObjectStore store, TreeMap<String, String[]> changes,
+                    boolean copies) {
+        _store = store;
+        _changes = changes;
+        _copies = copies;
+        _empty = Utils.sha1(new byte[0]);
+    }
+
+    /** Return the renames and copies found. */
+    private List<Rename> run() {
+        List<String> added = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        List<String> modified = new ArrayList<>();
+        for (Map.Entry<String, String[]> change : _changes.entrySet()) {
+            String[] ids = change.getValue();
+            if (ids[0] == null && !ids[1].equals(_empty)) {
+                added.add(change.getKey());
+            } else if (ids[1] == null && !ids[0].equals(_empty)) {
+                deleted.add(change.getKey());
+            } else if (ids[0] != null && ids[1] != null && _copies) {
+                modified.add(change.getKey());
+            }
+        }
+        TreeMap<String, Rename> result = new TreeMap<>();
+        HashSet<String> used = new HashSet<>();
+        exact(added, deleted, used, result);
+        added.removeIf(result::containsKey);
+        List<String> sources = new ArrayList<>();
+        for (String name : deleted) {
+            if (_copies || !used.contains(name)) {
+                sources.add(name);
+            }
+        }
+        sources.addAll(modified);
+        if (!added.isEmpty() && !sources.isEmpty()) {
+            similar(added, sources, used, result);
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /** Pair each of ADDED with a file of DELETED with the same blob,
+     *  adding the pairs to RESULT and the deleted files renamed to
+     *  USED. */
+    private void exact(List<String> added, List<String> deleted,
+                       HashSet<String> used, TreeMap<String, Rename> result) {
+        HashMap<String, List<String>> byId = new HashMap<>();
+        for (String name : deleted) {
+            byId.computeIfAbsent(_changes.get(name)[0],
+                                 x -> new ArrayList<>()).add(name);
+        }
+        for (String name : added) {
+            List<String> same = byId.get(_changes.get(name)[1]);
+            if (same == null) {
+                continue;
+            }
+            String best = null;
+            for (String from : same) {
+                if (!used.contains(from) && (best == null
+                    || baseName(from).equals(baseName(name)))) {
+                    best = from;
+                }
+            }
+            if (best != null) {
+                used.add(best);
+                result.put(name, new Rename(best, name, 100, false));
+            } else if (_copies) {
+                result.put(name, new Rename(same.get(0), name, 100, true));
+            }
+        }
+    }
+
+    /** Pair files of ADDED with files of SOURCES whose contents are
+     *  alike, adding the pairs to RESULT and the deleted sources renamed
+     *  to USED. */
+    private void similar(List<String> added, List<String> sources,
+                         HashSet<String> used, TreeMap<String, Rename> result) {
+        int[][] addedSignatures = new int[added.size()][];
+        long[] addedSizes = new long[added.size()];
+        for (int i = 0; i < added.size(); i += 1) {
+            byte[] data = _store.readBlob(_changes.get(added.get(i))[1]);
+            addedSignatures[i] = signature(data);
+            addedSizes[i] = data.length;
+        }
+        int[][] sourceSignatures = new int[sources.size()][];
+        long[] sourceSizes = new long[sources.size()];
+        for (int j = 0; j < sources.size(); j += 1) {
+            byte[] data = _store.readBlob(_changes.get(sources.get(j))[0]);
+            sourceSignatures[j] = signature(data);
+            sourceSizes[j] = data.length;
+        }
+        List<long[]> pairs = new ArrayList<>();
+        HashSet<Long> seen = new HashSet<>();
+        for (int band = 0; band < SIGNATURE / ROWS
+                 && seen.size() < MAX_CANDIDATES; band += 1) {
+            HashMap<Long, List<Integer>> buckets = new HashMap<>();
+            for (int j = 0; j < sources.size(); j += 1) {
+                buckets.computeIfAbsent(bucket(sourceSignatures[j], band),
+                                        x -> new ArrayList<>()).add(j);
+            }
+            for (int i = 0; i < added.size()
+                     && seen.size() < MAX_CANDIDATES; i += 1) {
+                List<Integer> bucket =
+                    buckets.get(bucket(addedSignatures[i], band));
+                if (bucket == null || bucket.size() > MAX_BUCKET) {
+                    continue;
+                }
+                for (int j : bucket) {
+                    long key = (long) i * sources.size() + j;
+                    if (!seen.add(key)) {
+                        continue;
+                    }
+                    long small = Math.min(addedSizes[i], sourceSizes[j]);
+                    long large = Math.max(addedSizes[i], sourceSizes[j]);
+                    if (small * 100 < large * MIN_SCORE) {
+                        continue;
+                    }
+                    int score = score(addedSignatures[i],
+                                      sourceSignatures[j]);
+                    if (score >= MIN_SCORE) {
+                        pairs.add(new long[] {score, i, j});
+                    }
+                }
+            }
+        }
+        pairs.sort((x, y) -> x[0] != y[0] ? Long.compare(y[0], x[0])
+                   : Boolean.compare(sameBase(added, sources, y),
+                                     sameBase(added, sources, x)));
+        for (long[] pair : pairs) {
+            String to = added.get((int) pair[1]);
+            String from = sources.get((int) pair[2]);
+            if (result.containsKey(to)) {
+                continue;
+            }
+            boolean deleted = _changes.get(from)[1] == null;
+            if (deleted && !used.contains(from)) {
+                used.add(from);
+                result.put(to, new Rename(from, to, (int) pair[0], false));
+            } else if (_copies) {
+                result.put(to, new Rename(from, to, (int) pair[0], true));
+            }
+        }
+    }
+
+    /** Return true iff the files of PAIR, indices into ADDED and
+     *  SOURCES, have the same base name. */
+    private static boolean sameBase(List<String> added, List<String> sources,
+                                    long[] pair) {
+        return baseName(added.get((int) pair[1]))
+            .equals(baseName(sources.get((int) pair[2])));
+    }
+
+    /** Return the last component of PATH. */
+    private static String baseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /** Return the MinHash signature of the lines of DATA. */
+    static int[] signature(byte[] data) {
+        int[] result = new int[SIGNATURE];
+        Arrays.fill(result, Integer.MAX_VALUE);
+        int hash = FNV_BASIS, length = 0;
+        for (int k = 0; k <= data.length; k += 1) {
+            if (k == data.length || length == CHUNK) {
+                if (length > 0) {
+                    include(result, hash);
+                }
+                hash = FNV_BASIS;
+                length = 0;
+                if (k == data.length) {
+                    break;
+                }
+            }
+            hash = (hash ^ (data[k] & 0xff)) * FNV_PRIME;
+            length += 1;
+            if (data[k] == '\n') {
+                include(result, hash);
+                hash = FNV_BASIS;
+                length = 0;
+            }
+        }
+        return result;
+    }
+
+    /** Lower the entries of SIGNATURE to the permutations of the line
+     *  hash HASH where smaller. */
+    private static void include(int[] signature, int hash) {
+        for (int i = 0; i < SIGNATURE; i += 1) {
+            long x = (hash & 0xffffffffL) ^ SEEDS[i];
+            x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+            x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            int value = (int) ((x ^ (x >>> 33)) & Integer.MAX_VALUE);
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+    }
+
+    /** Return the estimated similarity, in percent, of the files with
+     *  signatures A and B. */
+    static int score(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / SIGNATURE;
+    }
+
+    /** Return the bucket of SIGNATURE in band BAND. */
+    private static long bucket(int[] signature, int band) {
+        long result = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i += 1) {
+            result = result * 1000003L + signature[i];
+        }
+        return result;
+    }
+
+    /** FNV-1a parameters for hashing lines. */
+    private static final int FNV_BASIS = 0x811c9dc5, FNV_PRIME = 0x01000193;
+    /** Seeds of the hash functions of a signature. */
+    private static final long[] SEEDS = new long[SIGNATURE];
+
+    static {
+        long seed = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < SIGNATURE; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            SEEDS[i] = seed;
+        }
+    }
+
+    /** Where contents are read. */
+    private final ObjectStore _store;
+    /** The changes examined. */
+    private final TreeMap<String, String[]> _changes;
+    /** True iff copies are looked for. */
+    private final boolean _copies;
+    /** Id of the empty blob. */
+    private final String _empty;
+}
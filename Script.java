@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Batch mode: many commands run in one process against one Command, so
+ *  the repository is loaded once and saved once at the end, or at each
+ *  "checkpoint" line.
+ *
+ *  A script has one command per line, written as on the command line
+ *  without "java gitlet.Main": words are separated by blanks, and a word
+ *  in double quotes may contain blanks, with \" and \\ standing for " and
+ *  \.  Blank lines and lines starting with # are skipped.  A command that
+ *  fails prints its message, as it would alone, and the script goes on.
+ *  Any other error may have left the repository half changed, so it ends
+ *  the script without saving what followed the last checkpoint.
+ *  @author Yuqiong Ji.
+ */
+class Script {
+
+    /** Run the batch command ARGS: "batch FILE" runs the script in FILE,
+     *  "batch" the script on the standard input. */
+    static void main(String[] args) throws IOException {
+        if (args.length > 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        if (Daemon.running()) {
+            throw Utils.error("A daemon is running; stop it first.");
+        }
+        try (Reader in = args.length == 2
+                 ? new FileReader(args[1], StandardCharsets.UTF_8)
+                 : new InputStreamReader(System.in, StandardCharsets.UTF_8)) {
+            run(new BufferedReader(in), new Command());
+        } catch (FileNotFoundException excp) {
+            throw Utils.error("File does not exist.");
+        }
+    }
+
+    /** Run the script read from IN against REPO, saving REPO at each
+     *  checkpoint and at the end. */
+    static void run(BufferedReader in, Command repo) throws IOException {
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            if (line.trim().startsWith("#")) {
+                continue;
+            }
+            String[] args;
+            try {
+                args = split(line);
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+                continue;
+            }
+            if (args.length == 0) {
+                continue;
+            } else if (args[0].equals("checkpoint")) {
+                repo.save();
+                continue;
+            }
+            try {
+                if (args[0].equals("batch") || args[0].equals("daemon")) {
+                    throw Utils.error("No command with that name exists.");
+                }
+                Main.execute(repo, args);
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+        }
+        repo.save();
+        repo.reportCache();
+    }
+
+    /** Return the words of script LINE. */
+    static String[] split(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    result.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quoted) {
+            throw Utils.error("Unterminated quote: %s", line);
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/** A sorted table of binary object ids inside a mapped index file,
+ *  preceded by a 256-entry fan-out table whose entry B counts the ids
+ *  whose first byte is at most B.  Lookups search only the ids sharing
+ *  the first byte of their key, by binary search in place.
+ *  @author Yuqiong Ji.
+ */
+class SortedIds {
+
+    /** Number of bytes in a binary id. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Entries of the fan-out table. */
+    static final int FANOUT = 256;
+
+    /** The COUNT ids whose fan-out table starts at position FANOUTPOS of
+     *  MAP and whose ids start at IDSPOS. */
+    SortedIds(ByteBuffer map, int fanoutPos, int idsPos, int count) {
+        _map = map;
+        _fanout = fanoutPos;
+        _ids = idsPos;
+        _count = count;
+    }
+
+    /** Return the number of ids. */
+    int count() {
+        return _count;
+    }
+
+    /** Return the K-th id as a hexadecimal numeral. */
+    String id(int k) {
+        byte[] raw = new byte[ID_BYTES];
+        _map.get(_ids + k * ID_BYTES, raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Return the position of full hexadecimal id ID, or -1 if it is not
+     *  in the table. */
+    int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = fromHex(id);
+        int k = lowerBound(key);
+        return k < _count && compare(k, key) == 0 ? k : -1;
+    }
+
+    /** Return the position of the first id beginning with hexadecimal
+     *  PREFIX, or of the first id after where one would be. */
+    int lowerBound(String prefix) {
+        return lowerBound(fromHex(prefix + "0".repeat(
+            Utils.UID_LENGTH - prefix.length())));
+    }
+
+    /** Return the position of the first id that is not less than KEY. */
+    private int lowerBound(byte[] key) {
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : _map.getInt(_fanout + 4 * (first - 1));
+        int hi = _map.getInt(_fanout + 4 * first);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compare the K-th id with KEY as unsigned bytes. */
+    private int compare(int k, byte[] key) {
+        int base = _ids + k * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = (_map.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Write the fan-out table and the table of IDS, which must be sorted
+     *  hexadecimal numerals, to OUT. */
+    static void write(DataOutputStream out, Collection<String> ids)
+        throws IOException {
+        int[] fanout = new int[FANOUT];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int i = 0; i < FANOUT; i += 1) {
+            total += fanout[i];
+            out.writeInt(total);
+        }
+        for (String id : ids) {
+            out.write(fromHex(id));
+        }
+    }
+
+    /** Return the 20 bytes of hexadecimal id ID. */
+    static byte[] fromHex(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** The mapped file. */
+    private final ByteBuffer _map;
+    /** Position of the fan-out table. */
+    private final int _fanout;
+    /** Position of the first id. */
+    private final int _ids;
+    /** Number of ids. */
+    private final int _count;
+}
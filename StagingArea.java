@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/** The staging index: names of files staged for addition, mapped to the
+ *  ids of their blobs in the object store, names of files staged for
+ *  removal, plus a cache of the stat data and blob id of working files,
+ *  so that files whose stat data did not change need not be hashed
+ *  again, and of the listings of working directories, so that
+ *  directories whose stat data did not change need not be read again.
+ *  It is kept in its own record and written back only when it changed.
+ *  @author Yuqiong Ji.
+ */
+class StagingArea implements Serializable {
+
+    /** An empty staging area. */
+    StagingArea() {
+        _staging = new HashMap<>();
+        _remove = new HashSet<>();
+        _rmTmp = new HashSet<>();
+        _stats = new HashMap<>();
+        _statIds = new HashMap<>();
+        _listings = new HashMap<>();
+        _listingStats = new HashMap<>();
+    }
+
+    /** Return the staging area stored in FILE, or an empty one if FILE
+     *  does not exist. */
+    static StagingArea load(File file) {
+        if (!file.isFile()) {
+            return new StagingArea();
+        }
+        StagingArea result = Utils.readObject(file, StagingArea.class);
+        result._saved = Utils.serialize(result);
+        return result;
+    }
+
+    /** Add this staging area to JOURNAL, to be written to FILE, if it
+     *  differs from what is there. */
+    void save(File file, Journal journal) {
+        byte[] bytes = Utils.serialize(this);
+        if (_saved == null || !Arrays.equals(bytes, _saved)) {
+            journal.add(file, bytes, false);
+            _saved = bytes;
+        }
+    }
+
+    /** Return the names of files staged for addition, mapped to their
+     *  blob ids. */
+    HashMap<String, String> staged() {
+        return _staging;
+    }
+
+    /** Return the names of files staged for removal. */
+    HashSet<String> removed() {
+        return _remove;
+    }
+
+    /** Return the names of tracked files to untrack on the next commit. */
+    HashSet<String> untracked() {
+        return _rmTmp;
+    }
+
+    /** Return the blob id of working file NAME as cached for stat data
+     *  STAT, or null if the cache has no entry for that stat data. */
+    String cachedId(String name, FileStat stat) {
+        FileStat cached = _stats.get(name);
+        if (cached != null && cached.matches(stat)) {
+            return _statIds.get(name);
+        }
+        return null;
+    }
+
+    /** Cache ID as the blob id of working file NAME with stat data STAT,
+     *  unless STAT is too recent to be trusted. */
+    void cache(String name, FileStat stat, String id) {
+        if (stat != null && stat.reliable()) {
+            _stats.put(name, stat);
+            _statIds.put(name, id);
+        } else {
+            forget(name);
+        }
+    }
+
+    /** Drop the cached stat data of working file NAME. */
+    void forget(String name) {
+        _stats.remove(name);
+        _statIds.remove(name);
+    }
+
+    /** Return the entries of working directory DIR as cached for stat
+     *  data STAT, or null if the cache has no entry for that stat data. */
+    String[] cachedListing(String dir, FileStat stat) {
+        FileStat cached = _listingStats.get(dir);
+        if (cached != null && cached.matches(stat)) {
+            return _listings.get(dir);
+        }
+        return null;
+    }
+
+    /** Cache ENTRIES as the listing of working directory DIR with stat
+     *  data STAT, unless STAT is too recent to be trusted. */
+    void cacheListing(String dir, FileStat stat, String[] entries) {
+        if (stat != null && stat.reliable()) {
+            _listingStats.put(dir, stat);
+            _listings.put(dir, entries);
+        } else {
+            _listingStats.remove(dir);
+            _listings.remove(dir);
+        }
+    }
+
+    /** Drop the cached listings of all working directories not in
+     *  DIRS. */
+    void retainListings(Set<String> dirs) {
+        _listings.keySet().retainAll(dirs);
+        _listingStats.keySet().retainAll(dirs);
+    }
+
+    /** Return true iff the last command run was a merge. */
+    boolean merged() {
+        return _merged;
+    }
+
+    /** Record whether the last command run was a merge as MERGED. */
+    void setMerged(boolean merged) {
+        _merged = merged;
+    }
+
+    /** Staging file names and blob ids. */
+    private HashMap<String, String> _staging;
+    /** File names to be removed. */
+    private HashSet<String> _remove;
+    /** Tracked file names to untrack. */
+    private HashSet<String> _rmTmp;
+    /** Cached stat data of working files, by name. */
+    private HashMap<String, FileStat> _stats;
+    /** Blob ids of working files as of _stats, by name. */
+    private HashMap<String, String> _statIds;
+    /** Cached entries of working directories, by path ("" for the
+     *  working directory itself, else ending in '/'); subdirectory
+     *  entries end in '/'. */
+    private HashMap<String, String[]> _listings;
+    /** Stat data of working directories as of _listings, by path. */
+    private HashMap<String, FileStat> _listingStats;
+    /** True after a merge. */
+    private boolean _merged;
+    /** Serialized form as last read or written. */
+    private transient byte[] _saved;
+}
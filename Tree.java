@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** An immutable directory listing: file names mapped to blob ids and
+ *  subdirectory names mapped to the ids of their trees.  A tree's id is
+ *  the hash of its entries, so identical directories are stored once
+ *  and shared by every commit that contains them.
+ *  @author Yuqiong Ji.
+ */
+class Tree implements Serializable {
+
+    /** Separator between the components of a path. */
+    static final String SEPARATOR = "/";
+
+    /** A tree with files BLOBS and subdirectories TREES. */
+    Tree(TreeMap<String, String> blobs, TreeMap<String, String> trees) {
+        _blobs = blobs;
+        _trees = trees;
+        List<Object> item = new ArrayList<>();
+        for (Map.Entry<String, String> entry : _blobs.entrySet()) {
+            item.add("blob " + entry.getKey() + "\0" + entry.getValue() + "\n");
+        }
+        for (Map.Entry<String, String> entry : _trees.entrySet()) {
+            item.add("tree " + entry.getKey() + "\0" + entry.getValue() + "\n");
+        }
+        _id = Utils.sha1(item);
+    }
+
+    /** Return the id of this tree. */
+    String id() {
+        return _id;
+    }
+
+    /** Return true iff this tree has no entries. */
+    boolean isEmpty() {
+        return _blobs.isEmpty() && _trees.isEmpty();
+    }
+
+    /** Return the files of this tree, mapped to their blob ids. */
+    TreeMap<String, String> blobs() {
+        return _blobs;
+    }
+
+    /** Return the subdirectories of this tree, mapped to their tree ids. */
+    TreeMap<String, String> trees() {
+        return _trees;
+    }
+
+    /** Add every file under this tree to RESULT as PREFIX followed by its
+     *  path, mapped to its blob id, reading subtrees from STORE. */
+    void flatten(String prefix, ObjectStore store,
+                 TreeMap<String, String> result) {
+        for (Map.Entry<String, String> entry : _blobs.entrySet()) {
+            result.put(prefix + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : _trees.entrySet()) {
+            store.readTree(entry.getValue()).flatten(
+                prefix + entry.getKey() + SEPARATOR, store, result);
+        }
+    }
+
+    /** Add to RESULT every file path, as PREFIX followed by its path,
+     *  whose blob differs between the trees with ids FROM and TO (either
+     *  of which may be null for an empty tree), mapped to the pair of its
+     *  blob ids in FROM and TO, null where it is absent.  Subtrees with
+     *  equal ids are skipped without being read from STORE. */
+    static void diff(ObjectStore store, String from, String to,
+                     String prefix, TreeMap<String, String[]> result) {
+        if (from == null ? to == null : from.equals(to)) {
+            return;
+        }
+        Tree a = from == null ? EMPTY : store.readTree(from);
+        Tree b = to == null ? EMPTY : store.readTree(to);
+        TreeSet<String> names = new TreeSet<>(a._blobs.keySet());
+        names.addAll(b._blobs.keySet());
+        for (String name : names) {
+            String old = a._blobs.get(name), now = b._blobs.get(name);
+            if (old == null || !old.equals(now)) {
+                result.put(prefix + name, new String[] {old, now});
+            }
+        }
+        TreeSet<String> dirs = new TreeSet<>(a._trees.keySet());
+        dirs.addAll(b._trees.keySet());
+        for (String dir : dirs) {
+            diff(store, a._trees.get(dir), b._trees.get(dir),
+                 prefix + dir + SEPARATOR, result);
+        }
+    }
+
+    /** Return the id of the tree obtained by applying CHANGES to the tree
+     *  with id BASE (an empty tree if BASE is null), writing the new tree
+     *  nodes to STORE.  CHANGES maps paths to their new blob ids, or to
+     *  null for paths to remove.  Only the nodes on the paths of CHANGES
+     *  are rebuilt; all other subtrees are shared with BASE. */
+    static String update(ObjectStore store, String base,
+                         Map<String, String> changes) {
+        Tree old = base == null ? null : store.readTree(base);
+        if (old != null && changes.isEmpty()) {
+            return base;
+        }
+        TreeMap<String, String> blobs = new TreeMap<>();
+        TreeMap<String, String> trees = new TreeMap<>();
+        if (old != null) {
+            blobs.putAll(old._blobs);
+            trees.putAll(old._trees);
+        }
+        TreeMap<String, TreeMap<String, String>> subchanges = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash < 0) {
+                if (change.getValue() == null) {
+                    blobs.remove(path);
+                } else {
+                    blobs.put(path, change.getValue());
+                }
+            } else {
+                String dir = path.substring(0, slash);
+                if (!subchanges.containsKey(dir)) {
+                    subchanges.put(dir, new TreeMap<>());
+                }
+                subchanges.get(dir).put(path.substring(slash + 1),
+                                        change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> sub
+                 : subchanges.entrySet()) {
+            String id = update(store, trees.get(sub.getKey()),
+                               sub.getValue());
+            if (store.readTree(id).isEmpty()) {
+                trees.remove(sub.getKey());
+            } else {
+                trees.put(sub.getKey(), id);
+            }
+        }
+        Tree result = new Tree(blobs, trees);
+        store.writeTree(result);
+        return result.id();
+    }
+
+    /** The tree with no entries. */
+    private static final Tree EMPTY = new Tree(new TreeMap<>(),
+                                               new TreeMap<>());
+
+    /** Id of this tree. */
+    private final String _id;
+    /** File name and blob ID. */
+    private final TreeMap<String, String> _blobs;
+    /** Directory name and tree ID. */
+    private final TreeMap<String, String> _trees;
+}
@@ -3,7 +3,18 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
 
 
 import static org.junit.Assert.*;
@@ -27,6 +38,828 @@ public class UnitTest {
 
     }
 
+    /** Deltas rebuild their target, both for similar and for unrelated
+     *  contents. */
+    @Test
+    public void deltaRoundTripTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            text.append("line ").append(i).append("\n");
+        }
+        byte[] base = text.toString().getBytes();
+        byte[] target = text.toString().replace("line 1000\n", "changed\n")
+            .concat("tail\n").getBytes();
+        byte[] delta = Delta.create(base, target);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        byte[] other = "nothing in common".getBytes();
+        assertArrayEquals(other, Delta.apply(base, Delta.create(base, other)));
+        assertArrayEquals(new byte[0],
+                          Delta.apply(base, Delta.create(base, new byte[0])));
+    }
+
+    /** Script lines split on blanks, except inside double quotes. */
+    @Test
+    public void scriptSplitTest() {
+        assertArrayEquals(new String[] {"commit", "two words"},
+                          Script.split("  commit \"two words\" "));
+        assertArrayEquals(new String[] {"commit", "say \"hi\" \\ ", ""},
+                          Script.split("commit \"say \\\"hi\\\" \\\\ \" \"\""));
+        assertArrayEquals(new String[] {"add", "a/b.txt", "c"},
+                          Script.split("add a/b.txt\tc"));
+        assertEquals(0, Script.split("   ").length);
+    }
+
+    /** Changes to different lines merge cleanly; changes to the same
+     *  lines conflict on those lines only. */
+    @Test
+    public void lineMergeTest() {
+        byte[] base = "a\nb\nc\nd\ne\n".getBytes();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, LineMerge.merge(base, "A\nb\nc\nd\ne\n".getBytes(),
+                                        "a\nb\nc\nd\nE\n".getBytes(), out));
+        assertEquals("A\nb\nc\nd\nE\n", out.toString());
+        out.reset();
+        assertEquals(1, LineMerge.merge(base, "a\nb\nX\nd\ne\n".getBytes(),
+                                        "a\nb\nY\nd\ne\n".getBytes(), out));
+        assertEquals("a\nb\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nd\ne\n",
+                     out.toString());
+        out.reset();
+        assertEquals(0, LineMerge.merge(base, base, "a\nc\nd\nz".getBytes(),
+                                        out));
+        assertEquals("a\nc\nd\nz", out.toString());
+        out.reset();
+        byte[] binary = {'a', '\n', 0, '\n', 'b', '\n'};
+        byte[] ours = {'A', '\n', 0, '\n', 'b', '\n'};
+        byte[] theirs = {'a', '\n', 0, '\n', 'B', '\n'};
+        assertEquals(1, LineMerge.merge(binary, ours, theirs, out));
+        assertEquals("<<<<<<< HEAD\nA\n\0\nb\n=======\na\n\0\nB\n"
+                     + ">>>>>>>\n", out.toString());
+    }
+
+    /** Unified diffs show each change with its context, and note a
+     *  missing final newline. */
+    @Test
+    public void unifiedDiffTest() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Diff.unified("f", "f", "", "a\nb\nc\n".getBytes(),
+                     "a\nB\nc".getBytes(), out);
+        out.flush();
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n@@ -1,3 +1,3 @@\n"
+                     + " a\n-b\n-c\n+B\n+c\n\\ No newline at end of file\n",
+                     bytes.toString());
+    }
+
+    /** Swapping two large blocks diffs quickly into edits that rebuild
+     *  the new version. */
+    @Test(timeout = 10000)
+    public void swappedBlocksDiffTest() {
+        int n = 50000;
+        int[] a = new int[2 * n], b = new int[2 * n];
+        for (int i = 0; i < 2 * n; i += 1) {
+            a[i] = i;
+            b[i] = (i + n) % (2 * n);
+        }
+        List<Diff.Edit> edits = Diff.diff(a, b);
+        assertEquals(2, edits.size());
+        List<Integer> rebuilt = new ArrayList<>();
+        int copied = 0;
+        for (Diff.Edit edit : edits) {
+            for (int i = copied; i < edit.beginA; i += 1) {
+                rebuilt.add(a[i]);
+            }
+            for (int j = edit.beginB; j < edit.endB; j += 1) {
+                rebuilt.add(b[j]);
+            }
+            copied = edit.endA;
+        }
+        for (int i = copied; i < a.length; i += 1) {
+            rebuilt.add(a[i]);
+        }
+        for (int j = 0; j < b.length; j += 1) {
+            assertEquals(b[j], (int) rebuilt.get(j));
+        }
+        assertEquals(b.length, rebuilt.size());
+    }
+
+    /** Signatures of files sharing most lines score as alike, those of
+     *  unrelated files do not. */
+    @Test
+    public void similarityTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            text.append("line ").append(i).append("\n");
+        }
+        int[] base = Renames.signature(text.toString().getBytes());
+        int[] edited = Renames.signature(text.toString()
+            .replace("line 7\n", "seven\n").getBytes());
+        int[] other = Renames.signature(text.toString()
+            .replace("line", "row").getBytes());
+        assertTrue(Renames.score(base, edited) >= Renames.MIN_SCORE);
+        assertTrue(Renames.score(base, other) < Renames.MIN_SCORE);
+        assertEquals(100, Renames.score(base, base));
+    }
+
+    /** The cache evicts the least recently used objects past its budget
+     *  and keeps nothing heavier than its share of it. */
+    @Test
+    public void objectCacheTest() throws Exception {
+        ObjectCache cache = new ObjectCache(800);
+        cache.put("a", "A", 100);
+        cache.put("b", "B", 100);
+        assertEquals("A", cache.get("a"));
+        for (int i = 0; i < 7; i += 1) {
+            cache.put("x" + i, i, 100);
+        }
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        cache.put("big", "BIG", 101);
+        assertNull(cache.get("big"));
+        assertTrue(cache.stats().contains("2 hits"));
+
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore writer = store(dir, ObjectCache.DEFAULT_BUDGET);
+        Commit commit = new Commit();
+        commit.setindex(writer);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i += 1) {
+            commit = new Commit(commit, "commit " + i);
+            for (int j = 0; j < 500; j += 1) {
+                commit.track("f" + j, Utils.sha1(i + " " + j));
+            }
+            commit.setindex(writer);
+            writer.writeCommit(commit);
+            ids.add(commit.getindex());
+        }
+        long budget = 1 << 20;
+        ObjectStore reader = store(dir, budget);
+        Commit first = reader.readCommit(ids.get(0));
+        reader.readTree(first.getTree());
+        long unflattened = reader.cache().weight();
+        first.getBlob();
+        assertTrue(reader.cache().weight() - unflattened > 500 * 100);
+        for (String id : ids) {
+            assertEquals(500, reader.readCommit(id).getBlob().size());
+            assertTrue(reader.cache().weight() <= budget);
+        }
+    }
+
+    /** Return a store kept in DIR, caching up to BUDGET bytes. */
+    private static ObjectStore store(File dir, long budget) {
+        return new ObjectStore(new File(dir, "commits"),
+                               new File(dir, "trees"), new File(dir, "blobs"),
+                               new File(dir, "packs"),
+                               new File(dir, "commit-graph"), budget);
+    }
+
+    /** A file both renamed and copied shows as one rename and one
+     *  copy. */
+    @Test
+    public void renameAndCopyDiffTest() throws Exception {
+        File dir = repository();
+        write(dir, "d", lines(30));
+        gitlet(dir, "add", "d");
+        gitlet(dir, "commit", "base");
+        write(dir, "a", lines(30));
+        write(dir, "b", lines(30));
+        new File(dir, "d").delete();
+        gitlet(dir, "add", "a", "b");
+        gitlet(dir, "rm", "d");
+        String out = gitlet(dir, "diff", "--cached");
+        assertTrue(out, out.contains("rename from d\nrename to a\n"));
+        assertTrue(out, out.contains("copy from d\ncopy to b\n"));
+    }
+
+    /** Reset to a commit of another branch moves only the current
+     *  branch, leaving the other branch's later commits on it. */
+    @Test
+    public void resetOtherBranchTest() throws Exception {
+        File dir = repository();
+        write(dir, "f", "base\n");
+        gitlet(dir, "add", "f");
+        gitlet(dir, "commit", "base");
+        gitlet(dir, "branch", "dev");
+        gitlet(dir, "checkout", "dev");
+        write(dir, "f", "d1\n");
+        gitlet(dir, "add", "f");
+        gitlet(dir, "commit", "d1");
+        write(dir, "f", "d2\n");
+        gitlet(dir, "add", "f");
+        gitlet(dir, "commit", "d2");
+        gitlet(dir, "checkout", "master");
+        String d1 = gitlet(dir, "find", "d1").trim();
+        gitlet(dir, "reset", d1);
+        assertTrue(gitlet(dir, "status").startsWith(
+            "=== Branches ===\ndev\n*master\n"));
+        assertTrue(gitlet(dir, "log").contains("\nd1\n"));
+        gitlet(dir, "checkout", "dev");
+        assertTrue(gitlet(dir, "log").contains("\nd2\n"));
+    }
+
+    /** A command missing its operand fails alone with a message, and in
+     *  a script without losing the commands before it. */
+    @Test
+    public void missingOperandTest() throws Exception {
+        File dir = repository();
+        assertEquals("Incorrect operands.\n", gitlet(dir, "rm"));
+        assertEquals("Incorrect operands.\n", gitlet(dir, "merge"));
+        write(dir, "f", "x\n");
+        write(dir, "script", "add f\ncommit one\nrm\nbranch\n");
+        String out = gitlet(dir, "batch", "script");
+        assertEquals("Incorrect operands.\nIncorrect operands.\n", out);
+        assertTrue(gitlet(dir, "log").contains("\none\n"));
+    }
+
+    /** Recovery installs again a transaction whose records were lost
+     *  and cuts off a torn transaction at the end of the journal. */
+    @Test
+    public void journalRecoveryTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File file = new File(dir, "journal");
+        File record = new File(dir, "record");
+        Journal journal = new Journal(file);
+        journal.add(record, "contents".getBytes(), false);
+        journal.commit();
+        long length = file.length();
+        record.delete();
+        new File(dir, "journal.applied").delete();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            new DataOutputStream(out).writeInt(Journal.TRANSACTION_MAGIC);
+            out.write(new byte[] {0, 0, 0, 1, 0});
+        }
+        new Journal(file).recover();
+        assertEquals("contents", Utils.readContentsAsString(record));
+        assertEquals(length, file.length());
+    }
+
+    /** Inflating a truncated pack entry fails instead of looping. */
+    @Test(timeout = 10000)
+    public void truncatedPackEntryTest() {
+        byte[] text = lines(1000).getBytes();
+        byte[] packed = Pack.deflate(text);
+        assertArrayEquals(text, Pack.inflate(packed, text.length));
+        byte[] truncated = Arrays.copyOf(packed, packed.length / 2);
+        try {
+            Pack.inflate(truncated, text.length);
+            fail("truncated entry inflated");
+        } catch (GitletException excp) {
+            assertEquals("Corrupt pack entry.", excp.getMessage());
+        }
+    }
+
+    /** A criss-cross history has two best common ancestors, found alike
+     *  from loose commits and from the commit graph. */
+    @Test
+    public void crissCrossMergeBaseTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = store(dir, ObjectCache.DEFAULT_BUDGET);
+        Commit root = commit(store, new Commit(), "f", "root");
+        Commit a1 = commit(store, new Commit(root, "a1"), "f", "a1");
+        Commit b1 = commit(store, new Commit(root, "b1"), "g", "b1");
+        Commit a2 = commit(store, new Commit(a1, b1, "a2"), "h", "a2");
+        Commit b2 = commit(store, new Commit(b1, a1, "b2"), "h", "b2");
+        List<String> expected = new ArrayList<>(
+            List.of(a1.getindex(), b1.getindex()));
+        expected.sort(null);
+        for (int pass = 0; pass < 2; pass += 1) {
+            MergeBase bases = new MergeBase(store);
+            assertEquals(expected, bases.find(a2.getindex(), b2.getindex()));
+            assertEquals(expected, bases.find(b2.getindex(), a2.getindex()));
+            assertEquals(List.of(root.getindex()),
+                         bases.find(a1.getindex(), b1.getindex()));
+            assertTrue(bases.isAncestor(b1.getindex(), a2.getindex()));
+            assertFalse(bases.isAncestor(a2.getindex(), b2.getindex()));
+            store.repack();
+            store = store(dir, ObjectCache.DEFAULT_BUDGET);
+        }
+    }
+
+    /** The merge base of a wide history, merging many branches off one
+     *  commit, is that commit. */
+    @Test(timeout = 20000)
+    public void wideMergeBaseTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = store(dir, ObjectCache.DEFAULT_BUDGET);
+        Commit root = commit(store, new Commit(), "f", "root");
+        Commit merged = commit(store, new Commit(root, "b0"), "f", "b0");
+        for (int i = 1; i < 1000; i += 1) {
+            Commit branch = commit(store, new Commit(root, "b" + i),
+                                   "f" + i, "b" + i);
+            merged = commit(store, new Commit(merged, branch, "m" + i),
+                            "f", "m" + i);
+        }
+        Commit other = commit(store, new Commit(root, "other"), "g", "g");
+        MergeBase bases = new MergeBase(store);
+        assertEquals(List.of(root.getindex()),
+                     bases.find(merged.getindex(), other.getindex()));
+        assertEquals(List.of(other.getindex()),
+                     bases.find(other.getindex(), other.getindex()));
+    }
+
+    /** A new commit records only its changes against its parent's
+     *  tree, without reading the parent's files. */
+    @Test
+    public void commitChangesOnlyTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore writer = store(dir, ObjectCache.DEFAULT_BUDGET);
+        Commit base = new Commit();
+        base.setindex(writer);
+        base = new Commit(base, "base");
+        for (int i = 0; i < 200; i += 1) {
+            base.track("d" + (i % 10) + "/f" + i, Utils.sha1("v" + i));
+        }
+        base.setindex(writer);
+        writer.writeCommit(base);
+        ObjectStore reader = store(dir, ObjectCache.DEFAULT_BUDGET);
+        Commit parent = reader.readCommit(base.getindex());
+        Commit child = commit(reader, new Commit(parent, "child"),
+                              "d3/f3", "changed");
+        assertEquals(0, parent.flattenedSize());
+        TreeMap<String, String> files = child.getBlob();
+        assertEquals(200, files.size());
+        assertEquals(Utils.sha1("changed"), files.get("d3/f3"));
+        assertEquals(Utils.sha1("v4"), files.get("d4/f4"));
+        Commit other = new Commit(parent, "other");
+        other.untrack("d4/f4");
+        other = commit(reader, other, "e/new", "new");
+        Commit merged = commit(reader, new Commit(child, other, "merge"),
+                               "d5/f5", "merged");
+        files = merged.getBlob();
+        assertEquals(201, files.size());
+        assertEquals(Utils.sha1("v3"), files.get("d3/f3"));
+        assertEquals(Utils.sha1("v4"), files.get("d4/f4"));
+        assertEquals(Utils.sha1("new"), files.get("e/new"));
+        assertEquals(Utils.sha1("merged"), files.get("d5/f5"));
+    }
+
+    /** Return COMMIT with file NAME set to blob id CODE, written to
+     *  STORE. */
+    private static Commit commit(ObjectStore store, Commit commit,
+                                 String name, String code) {
+        if (commit.getParent() != null) {
+            commit.track(name, Utils.sha1(code));
+        }
+        commit.setindex(store);
+        store.writeCommit(commit);
+        return commit;
+    }
+
+    /** Abbreviated ids of packed commits resolve, unless the prefix
+     *  names several commits. */
+    @Test
+    public void packedAbbreviationTest() throws Exception {
+        File dir = repository();
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 20; i += 1) {
+            write(dir, "f" + i, i + "\n");
+            script.append("add f").append(i).append("\ncommit c")
+                .append(i).append("\n");
+        }
+        write(dir, "script", script.toString());
+        assertEquals("", gitlet(dir, "batch", "script"));
+        gitlet(dir, "gc");
+        File commits = new File(dir, ".gitlet/commits");
+        assertTrue(commits.list() == null || commits.list().length == 0);
+        List<String> ids = ids(gitlet(dir, "global-log"));
+        assertEquals(21, ids.size());
+        String c3 = gitlet(dir, "find", "c3").trim();
+        write(dir, "f3", "changed\n");
+        assertEquals("", gitlet(dir, "checkout", c3.substring(0, 6), "--",
+                                "f3"));
+        assertEquals("3\n", Utils.readContentsAsString(new File(dir, "f3")));
+        String shared = null;
+        for (String id : ids) {
+            for (String other : ids) {
+                if (id != other && id.charAt(0) == other.charAt(0)) {
+                    shared = id.substring(0, 1);
+                }
+            }
+        }
+        assertEquals("Ambiguous commit id.\n",
+                     gitlet(dir, "checkout", shared, "--", "f3"));
+        String last = ids.get(0).substring(Utils.UID_LENGTH - 1);
+        String missing = ids.get(0).substring(0, Utils.UID_LENGTH - 1)
+            + (last.equals("0") ? "1" : "0");
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(dir, "checkout", missing, "--", "f3"));
+    }
+
+    /** Find looks messages up by exact text, word and word prefix,
+     *  skipping indexed commits that were never installed, and rebuilds
+     *  a missing index from the stored commits. */
+    @Test
+    public void messageIndexTest() throws Exception {
+        File dir = repository();
+        write(dir, "script", "add f\ncommit \"Fix parser bug\"\n"
+              + "add g\ncommit \"parse options\"\n"
+              + "add h\ncommit \"Fix parser bug\"\n");
+        write(dir, "f", "f\n");
+        write(dir, "g", "g\n");
+        write(dir, "h", "h\n");
+        assertEquals("", gitlet(dir, "batch", "script"));
+        List<String> ids = ids(gitlet(dir, "log"));
+        String third = ids.get(0), second = ids.get(1), first = ids.get(2);
+        File index = new File(dir, ".gitlet/find");
+        File elsewhere = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore other = store(elsewhere, ObjectCache.DEFAULT_BUDGET);
+        Commit root = commit(other, new Commit(), "f", "root");
+        new MessageIndex(index).add(
+            commit(other, new Commit(root, "Fix parser bug"), "x", "x"));
+        for (int pass = 0; pass < 2; pass += 1) {
+            assertEquals(first + "\n" + third + "\n\n",
+                         gitlet(dir, "find", "Fix parser bug"));
+            assertEquals("Found no commit with that message.\n",
+                         gitlet(dir, "find", "Fix parser"));
+            assertEquals(first + "\n" + third + "\n\n",
+                         gitlet(dir, "find", "--word", "BUG"));
+            assertEquals(first + "\n" + third + "\n" + second + "\n\n",
+                         gitlet(dir, "find", "--prefix", "Pars"));
+            delete(index);
+            assertFalse(index.exists());
+        }
+    }
+
+    /** Log and global-log show at most -n entries and only those made
+     *  since --since, and log stops walking at the first older commit. */
+    @Test
+    public void logLimitsTest() throws Exception {
+        File dir = repository();
+        write(dir, "f", "1\n");
+        gitlet(dir, "add", "f");
+        gitlet(dir, "commit", "c1");
+        Thread.sleep(1100);
+        write(dir, "script", "add f\ncommit c2\nadd g\ncommit c3\n");
+        write(dir, "f", "2\n");
+        write(dir, "g", "3\n");
+        assertEquals("", gitlet(dir, "batch", "script"));
+        String log = gitlet(dir, "log");
+        List<String> ids = ids(log);
+        assertEquals(4, ids.size());
+        String[] entries = log.split("=== \n");
+        String newest = "=== \n" + entries[1] + "=== \n" + entries[2];
+        assertEquals(newest + "\n", gitlet(dir, "log", "-n", "2"));
+        assertEquals("\n", gitlet(dir, "log", "-n", "0"));
+        String date = log.split("\n")[2].substring("Date: ".length());
+        String since = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss")
+            .format(new SimpleDateFormat(Commit.TIME_FORMAT).parse(date));
+        List<String> recent = new ArrayList<>(ids.subList(0, 2));
+        recent.sort(null);
+        assertEquals(recent, ids(gitlet(dir, "global-log", "--since",
+                                        since)));
+        assertEquals(1, ids(gitlet(dir, "global-log", "-n", "1")).size());
+        assertEquals("Incorrect operands.\n",
+                     gitlet(dir, "log", "--since", "yesterday"));
+        String initial = ids.get(3);
+        write(new File(dir, ".gitlet/commits/" + initial.substring(0, 2)),
+              initial.substring(2), "not a commit");
+        assertEquals(newest + "\n", gitlet(dir, "log", "--since", since));
+        assertEquals("=== \n" + entries[1] + "\n",
+                     gitlet(dir, "log", "-n", "1", "--since", since));
+    }
+
+    /** A glob matches within one directory with "*" and across
+     *  directories with "**"; a directory adds every file below it. */
+    @Test
+    public void addPatternTest() throws Exception {
+        File dir = repository();
+        new File(dir, "sub/deep").mkdirs();
+        write(dir, "a.txt", "a\n");
+        write(dir, "b.md", "b\n");
+        write(dir, "sub/c.txt", "c\n");
+        write(dir, "sub/e.md", "e\n");
+        write(dir, "sub/deep/d.txt", "d\n");
+        assertEquals("", gitlet(dir, "add", "*.txt"));
+        assertEquals(List.of("a.txt"), staged(dir));
+        assertEquals("", gitlet(dir, "add", "**.txt"));
+        assertEquals(List.of("a.txt", "sub/c.txt", "sub/deep/d.txt"),
+                     staged(dir));
+        assertEquals("", gitlet(dir, "add", "sub/*.md"));
+        assertEquals(List.of("a.txt", "sub/c.txt", "sub/deep/d.txt",
+                             "sub/e.md"), staged(dir));
+        assertEquals("File does not exist.\n",
+                     gitlet(dir, "add", "*.java"));
+
+        dir = repository();
+        new File(dir, "sub/deep").mkdirs();
+        write(dir, "a.txt", "a\n");
+        write(dir, "sub/c.txt", "c\n");
+        write(dir, "sub/deep/d.txt", "d\n");
+        assertEquals("", gitlet(dir, "add", "sub/"));
+        assertEquals(List.of("sub/c.txt", "sub/deep/d.txt"), staged(dir));
+        assertEquals("", gitlet(dir, "add", "."));
+        assertEquals(List.of("a.txt", "sub/c.txt", "sub/deep/d.txt"),
+                     staged(dir));
+    }
+
+    /** Return the files staged for addition in the repository in DIR,
+     *  as listed by status. */
+    private static List<String> staged(File dir) throws Exception {
+        String status = gitlet(dir, "status");
+        int start = status.indexOf("=== Staged Files ===\n");
+        String section = status.substring(
+            start + "=== Staged Files ===\n".length(),
+            status.indexOf("\n\n", start));
+        return section.isEmpty() ? List.of() : List.of(section.split("\n"));
+    }
+
+    /** Files in subdirectories are added, committed and checked out by
+     *  their paths, and checking out a branch creates and removes their
+     *  directories. */
+    @Test
+    public void nestedPathTest() throws Exception {
+        File dir = repository();
+        new File(dir, "a/b").mkdirs();
+        write(dir, "a/b/c.txt", "c\n");
+        write(dir, "a/d.txt", "d\n");
+        assertEquals("", gitlet(dir, "add", "a/b/c.txt", "./a/d.txt"));
+        assertEquals("", gitlet(dir, "commit", "nested"));
+        write(dir, "a/b/c.txt", "changed\n");
+        assertTrue(gitlet(dir, "status").contains(
+            "=== Modifications Not Staged For Commit ===\na/b/c.txt"
+            + " (modified)\n"));
+        assertEquals("", gitlet(dir, "checkout", "--", "a/b/c.txt"));
+        assertEquals("c\n",
+                     Utils.readContentsAsString(new File(dir, "a/b/c.txt")));
+        gitlet(dir, "branch", "other");
+        gitlet(dir, "checkout", "other");
+        new File(dir, "x/y").mkdirs();
+        write(dir, "x/y/z.txt", "z\n");
+        gitlet(dir, "add", "x/y/z.txt");
+        gitlet(dir, "rm", "a/b/c.txt");
+        assertEquals("", gitlet(dir, "commit", "other"));
+        assertFalse(new File(dir, "a/b").exists());
+        assertEquals("", gitlet(dir, "checkout", "master"));
+        assertFalse(new File(dir, "x").exists());
+        assertEquals("c\n",
+                     Utils.readContentsAsString(new File(dir, "a/b/c.txt")));
+        assertEquals("", gitlet(dir, "checkout", "other"));
+        assertEquals("z\n",
+                     Utils.readContentsAsString(new File(dir, "x/y/z.txt")));
+        assertFalse(new File(dir, "a/b").exists());
+    }
+
+    /** A commit rebuilds only the trees on the paths it changes, and
+     *  comparing commits never reads the subtrees they share. */
+    @Test
+    public void unchangedSubtreeTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore writer = store(dir, ObjectCache.DEFAULT_BUDGET);
+        Commit first = new Commit();
+        first.setindex(writer);
+        first = new Commit(first, "first");
+        for (int i = 0; i < 50; i += 1) {
+            first.track("big/sub/f" + i, Utils.sha1("big " + i));
+        }
+        first = commit(writer, first, "small/y", "y1");
+        Commit second = commit(writer, new Commit(first, "second"),
+                               "small/y", "y2");
+        String big = writer.readTree(first.getTree()).trees().get("big");
+        assertEquals(big,
+                     writer.readTree(second.getTree()).trees().get("big"));
+        String sub = writer.readTree(big).trees().get("sub");
+        for (String id : List.of(big, sub)) {
+            assertTrue(new File(dir, "trees/" + id.substring(0, 2) + "/"
+                                + id.substring(2)).delete());
+        }
+        ObjectStore reader = store(dir, ObjectCache.DEFAULT_BUDGET);
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(reader, first.getTree(), second.getTree(), "", changes);
+        assertEquals(List.of("small/y"), new ArrayList<>(changes.keySet()));
+        assertArrayEquals(new String[] {Utils.sha1("y1"), Utils.sha1("y2")},
+                          changes.get("small/y"));
+        Commit third = commit(reader,
+                              new Commit(reader.readCommit(
+                                  second.getindex()), "third"),
+                              "small/z", "z");
+        assertEquals(big,
+                     reader.readTree(third.getTree()).trees().get("big"));
+    }
+
+    /** Merging a descendant fast-forwards the current branch, unless an
+     *  untracked file is in the way; merging an ancestor does nothing. */
+    @Test
+    public void mergeShortcutTest() throws Exception {
+        File dir = repository();
+        write(dir, "f", "base\n");
+        gitlet(dir, "add", "f");
+        gitlet(dir, "commit", "base");
+        gitlet(dir, "branch", "other");
+        gitlet(dir, "checkout", "other");
+        write(dir, "f", "d1\n");
+        gitlet(dir, "add", "f");
+        gitlet(dir, "commit", "d1");
+        write(dir, "n", "new\n");
+        gitlet(dir, "add", "n");
+        gitlet(dir, "commit", "d2");
+        String other = ids(gitlet(dir, "log")).get(0);
+        assertEquals("Given branch is an ancestor of the current branch.\n",
+                     gitlet(dir, "merge", "master"));
+        assertEquals(other, ids(gitlet(dir, "log")).get(0));
+        gitlet(dir, "checkout", "master");
+        String master = ids(gitlet(dir, "log")).get(0);
+        write(dir, "n", "mine\n");
+        assertEquals("There is an untracked file in the way; delete it, or"
+                     + " add and commit it first.\n",
+                     gitlet(dir, "merge", "other"));
+        assertEquals(master, ids(gitlet(dir, "log")).get(0));
+        assertEquals("mine\n",
+                     Utils.readContentsAsString(new File(dir, "n")));
+        assertEquals("base\n",
+                     Utils.readContentsAsString(new File(dir, "f")));
+        new File(dir, "n").delete();
+        assertEquals("Current branch fast-forwarded.\n",
+                     gitlet(dir, "merge", "other"));
+        List<String> log = ids(gitlet(dir, "log"));
+        assertEquals(other, log.get(0));
+        assertEquals(master, log.get(2));
+        assertEquals(4, log.size());
+        assertEquals("d1\n", Utils.readContentsAsString(new File(dir, "f")));
+        assertEquals("new\n", Utils.readContentsAsString(new File(dir, "n")));
+        assertTrue(gitlet(dir, "status").startsWith(
+            "=== Branches ===\n*master\nother\n\n=== Staged Files ===\n\n"));
+    }
+
+    /** Reset restores tracked files that were modified or deleted in
+     *  the working tree; reset and checkout rewrite only the files that
+     *  differ between the commits, leaving the others untouched. */
+    @Test
+    public void resetRestoresTest() throws Exception {
+        File dir = repository();
+        write(dir, "keep", "keep\n");
+        write(dir, "mod", "v1\n");
+        gitlet(dir, "add", "keep", "mod");
+        gitlet(dir, "commit", "c1");
+        gitlet(dir, "branch", "old");
+        write(dir, "mod", "v2\n");
+        write(dir, "gone", "gone\n");
+        gitlet(dir, "add", "mod", "gone");
+        gitlet(dir, "commit", "c2");
+        List<String> ids = ids(gitlet(dir, "log"));
+        write(dir, "keep", "dirty\n");
+        new File(dir, "mod").delete();
+        assertEquals("", gitlet(dir, "reset", ids.get(0)));
+        assertEquals("keep\n",
+                     Utils.readContentsAsString(new File(dir, "keep")));
+        assertEquals("v2\n", Utils.readContentsAsString(new File(dir, "mod")));
+
+        long past = 946684800000L;
+        File keep = new File(dir, "keep");
+        assertTrue(keep.setLastModified(past));
+        assertEquals("", gitlet(dir, "reset", ids.get(1)));
+        assertEquals(past, keep.lastModified());
+        assertEquals("v1\n", Utils.readContentsAsString(new File(dir, "mod")));
+        assertFalse(new File(dir, "gone").exists());
+        assertEquals(ids.get(1), ids(gitlet(dir, "log")).get(0));
+
+        assertEquals("", gitlet(dir, "reset", ids.get(0)));
+        write(dir, "keep", "dirty\n");
+        assertTrue(keep.setLastModified(past));
+        assertEquals("", gitlet(dir, "checkout", "old"));
+        assertEquals(past, keep.lastModified());
+        assertEquals("dirty\n", Utils.readContentsAsString(keep));
+        assertEquals("v1\n", Utils.readContentsAsString(new File(dir, "mod")));
+        assertFalse(new File(dir, "gone").exists());
+    }
+
+    /** A large file is staged as one blob holding its exact bytes, and
+     *  comes back byte for byte from a checkout. */
+    @Test
+    public void largeFileStagingTest() throws Exception {
+        File dir = repository();
+        byte[] contents = bytes(8 << 20, 13);
+        File file = new File(dir, "large.bin");
+        Utils.writeContents(file, contents);
+        assertEquals("", gitlet(dir, "add", "large.bin"));
+        String id = Utils.sha1(contents);
+        assertArrayEquals(contents, Files.readAllBytes(
+            new File(dir, ".gitlet/blobs/" + id).toPath()));
+        assertEquals(List.of("large.bin"), staged(dir));
+        assertEquals("", gitlet(dir, "commit", "large"));
+        Utils.writeContents(file, bytes(8 << 20, 14));
+        assertEquals("", gitlet(dir, "checkout", "--", "large.bin"));
+        assertArrayEquals(contents, Files.readAllBytes(file.toPath()));
+        assertTrue(gitlet(dir, "status").endsWith(
+            "=== Modifications Not Staged For Commit ===\n\n"
+            + "=== Untracked Files ===\n\n\n"));
+    }
+
+    /** Binary contents that are not valid UTF-8 survive staging,
+     *  commits, checkouts and a merge conflict byte for byte. */
+    @Test
+    public void binaryRoundTripTest() throws Exception {
+        File dir = repository();
+        byte[] base = new byte[256 + (1 << 20)];
+        for (int i = 0; i < 256; i += 1) {
+            base[i] = (byte) i;
+        }
+        System.arraycopy(bytes(1 << 20, 1), 0, base, 256, 1 << 20);
+        byte[] ours = base.clone();
+        ours[300] ^= (byte) 0xff;
+        byte[] theirs = base.clone();
+        theirs[base.length - 1] ^= (byte) 0xc3;
+        File file = new File(dir, "data.bin");
+        Utils.writeContents(file, base);
+        gitlet(dir, "add", "data.bin");
+        gitlet(dir, "commit", "base");
+        String first = ids(gitlet(dir, "log")).get(0);
+        gitlet(dir, "branch", "other");
+        Utils.writeContents(file, ours);
+        gitlet(dir, "add", "data.bin");
+        gitlet(dir, "commit", "ours");
+        gitlet(dir, "checkout", "other");
+        assertArrayEquals(base, Files.readAllBytes(file.toPath()));
+        Utils.writeContents(file, theirs);
+        write(dir, "side", "side\n");
+        gitlet(dir, "add", "data.bin", "side");
+        gitlet(dir, "commit", "theirs");
+        gitlet(dir, "checkout", "master");
+        assertArrayEquals(ours, Files.readAllBytes(file.toPath()));
+        assertEquals("", gitlet(dir, "checkout", first, "--", "data.bin"));
+        assertArrayEquals(base, Files.readAllBytes(file.toPath()));
+        assertTrue(gitlet(dir, "status").contains(
+            "=== Modifications Not Staged For Commit ===\ndata.bin"
+            + " (modified)\n"));
+        gitlet(dir, "checkout", "--", "data.bin");
+        assertArrayEquals(ours, Files.readAllBytes(file.toPath()));
+        assertEquals("Encountered a merge conflict.\n",
+                     gitlet(dir, "merge", "other"));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.writeBytes("<<<<<<< HEAD\n".getBytes());
+        expected.writeBytes(ours);
+        expected.writeBytes("=======\n".getBytes());
+        expected.writeBytes(theirs);
+        expected.writeBytes(">>>>>>>\n".getBytes());
+        assertArrayEquals(expected.toByteArray(),
+                          Files.readAllBytes(file.toPath()));
+    }
+
+    /** Return N pseudo-random bytes drawn from SEED. */
+    private static byte[] bytes(int n, long seed) {
+        byte[] result = new byte[n];
+        new java.util.Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /** Return a new directory holding an initialized repository. */
+    private static File repository() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        gitlet(dir, "init");
+        return dir;
+    }
+
+    /** Return the output of gitlet run with ARGS in directory DIR. */
+    private static String gitlet(File dir, String... args)
+        throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + "/bin/java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("gitlet.Main");
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+        String result = new String(process.getInputStream().readAllBytes());
+        process.waitFor();
+        return result;
+    }
+
+    /** Return the commit ids listed in LOG, in order. */
+    private static List<String> ids(String log) {
+        List<String> result = new ArrayList<>();
+        for (String line : log.split("\n")) {
+            if (line.startsWith("commit ")) {
+                result.add(line.substring("commit ".length()));
+            }
+        }
+        return result;
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Write TEXT to file NAME in DIR. */
+    private static void write(File dir, String name, String text) {
+        Utils.writeContents(new File(dir, name), text);
+    }
+
+    /** Return the text of lines 1 to N. */
+    private static String lines(int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i <= n; i += 1) {
+            result.append(i).append("\n");
+        }
+        return result.toString();
+    }
+
 
 }
 
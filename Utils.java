@@ -1,21 +1,24 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -29,30 +32,95 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Size of the buffers used to stream file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which is streamed
+     *  through a fixed-size buffer rather than read into memory.  The
+     *  result equals sha1(readContents(FILE)). */
+    static String sha1(File file) {
+        MessageDigest md = digest();
+        byte[] buffer = BUFFERS.get();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    /** Copies the contents of FROM to TO, reading FROM once through a
+     *  fixed-size buffer, and returns the SHA-1 hash of the contents. */
+    static String sha1Copy(File from, File to) {
+        MessageDigest md = digest();
+        byte[] buffer = BUFFERS.get();
+        try (InputStream in = Files.newInputStream(from.toPath());
+             FileOutputStream out = new FileOutputStream(to)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns this thread's SHA-1 digest, reset and ready for use. */
+    private static MessageDigest digest() {
+        MessageDigest md = DIGESTS.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
         }
+        return new String(result);
     }
 
+    /** Hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** One reusable SHA-1 digest per thread. */
+    private static final ThreadLocal<MessageDigest> DIGESTS =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
+    /** One reusable streaming buffer per thread. */
+    private static final ThreadLocal<byte[]> BUFFERS =
+        ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -132,6 +200,35 @@ class Utils {
         }
     }
 
+    /** Write the result of concatenating the bytes in CONTENTS to FILE
+     *  as writeContents does, but into a temporary file that is then
+     *  renamed over FILE, so FILE is never seen partly written. */
+    static void writeAtomically(File file, Object... contents) {
+        File temp = new File(file.getParentFile(), "." + file.getName()
+                             + ".tmp-" + System.nanoTime());
+        writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy the contents of FROM to TO, creating or overwriting it as
+     *  needed, without holding them in memory.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void copyContents(File from, File to) {
+        try {
+            Files.copy(from.toPath(), to.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -218,6 +315,23 @@ class Utils {
 
 
 
+    /** Returns an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+
+/** File-system watching on behalf of a daemon.  Facts about the working
+ *  tree that a command verified on disk (the listing of a directory, the
+ *  blob id of a file) are recorded with the stat data they were read
+ *  with and the generation of their directory.  A later command gets a
+ *  fact back only if the stat data it has just taken still match and no
+ *  event was reported in that directory since.  Events may be reported
+ *  well after the change, so they only ever discard facts; the stat data
+ *  are what vouch for them.  Changes to the packs or commit graph of the
+ *  repository are reported too, so that the object store can open them
+ *  again.
+ *  @author Yuqiong Ji.
+ */
+class Watcher {
+
+    /** A watcher with nothing verified yet. */
+    Watcher() throws IOException {
+        _service = FileSystems.getDefault().newWatchService();
+        _dirs = new HashMap<>();
+        _keys = new HashMap<>();
+        _generations = new HashMap<>();
+        _verified = new HashMap<>();
+        _stats = new HashMap<>();
+        _stamps = new HashMap<>();
+        _repository = new HashMap<>();
+        watchRepository(Command.GIT_FOLDER.getPath());
+        watchRepository(Command.PACK_FOLDER.getPath());
+    }
+
+    /** Return the current generation of the directory of KEY, which is a
+     *  working file name, or a directory path that is "" or ends in '/',
+     *  watching the directory from now on.  A fact about KEY verified
+     *  after this call is recorded with this stamp.  Returns -1 if the
+     *  directory cannot be watched. */
+    synchronized long stamp(String key) {
+        poll();
+        String dir = dirOf(key);
+        if (!_dirs.containsKey(dir)) {
+            try {
+                WatchKey watched = register(dir.isEmpty() ? "." : dir);
+                _dirs.put(dir, watched);
+                _keys.put(watched, dir);
+            } catch (IOException excp) {
+                return -1;
+            }
+        }
+        return _generations.getOrDefault(dir, 0L);
+    }
+
+    /** Record VALUE as verified for KEY, with stat data STAT, as of
+     *  STAMP, unless STAT is too recent to be trusted. */
+    synchronized void record(String key, long stamp, FileStat stat,
+                             Object value) {
+        if (stamp >= 0 && stat != null && stat.reliable()) {
+            _verified.put(key, value);
+            _stats.put(key, stat);
+            _stamps.put(key, stamp);
+        } else {
+            _verified.remove(key);
+            _stats.remove(key);
+            _stamps.remove(key);
+        }
+    }
+
+    /** Return the value recorded for KEY if its stat data match STAT,
+     *  as just taken, and nothing changed in its directory since, or
+     *  else null. */
+    synchronized Object verified(String key, FileStat stat) {
+        poll();
+        Long stamp = _stamps.get(key);
+        String dir = dirOf(key);
+        if (stamp == null || !_dirs.containsKey(dir)
+            || !stamp.equals(_generations.getOrDefault(dir, 0L))
+            || stat == null || !stat.matches(_stats.get(key))) {
+            return null;
+        }
+        return _verified.get(key);
+    }
+
+    /** Return true iff the packs or commit graph of the repository may
+     *  have changed since the last call. */
+    synchronized boolean repositoryChanged() {
+        poll();
+        boolean result = _repositoryChanged;
+        _repositoryChanged = false;
+        return result;
+    }
+
+    /** Process the pending events. */
+    private void poll() {
+        for (WatchKey key = _service.poll(); key != null;
+             key = _service.poll()) {
+            String dir = _keys.get(key);
+            String repo = _repository.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    _verified.clear();
+                    _stats.clear();
+                    _stamps.clear();
+                    _repositoryChanged = true;
+                } else if (repo != null) {
+                    repositoryEvent(repo, event.context().toString());
+                } else if (dir != null && !(dir.isEmpty()
+                           && event.context().toString().equals(
+                               Command.GIT_FOLDER.getName()))) {
+                    _generations.put(dir, ++_clock);
+                }
+            }
+            if (!key.reset()) {
+                _keys.remove(key);
+                _repository.remove(key);
+                if (dir != null) {
+                    _dirs.remove(dir);
+                    _generations.put(dir, ++_clock);
+                }
+            }
+        }
+    }
+
+    /** Note an event on entry NAME of repository directory REPO. */
+    private void repositoryEvent(String repo, String name) {
+        if (repo.equals(Command.PACK_FOLDER.getPath())
+            || name.equals(Command.GRAPH_FILE.getName())) {
+            _repositoryChanged = true;
+        }
+        if (name.equals(Command.PACK_FOLDER.getName())) {
+            _repositoryChanged = true;
+            watchRepository(Command.PACK_FOLDER.getPath());
+        }
+    }
+
+    /** Watch repository directory DIR, if it exists. */
+    private void watchRepository(String dir) {
+        if (Paths.get(dir).toFile().isDirectory()
+            && !_repository.containsValue(dir)) {
+            try {
+                _repository.put(register(dir), dir);
+            } catch (IOException excp) {
+                _repositoryChanged = true;
+            }
+        }
+    }
+
+    /** Register DIR with the watch service and return its key. */
+    private WatchKey register(String dir) throws IOException {
+        Path path = Paths.get(dir);
+        return path.register(_service,
+                             StandardWatchEventKinds.ENTRY_CREATE,
+                             StandardWatchEventKinds.ENTRY_DELETE,
+                             StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /** Return the directory holding KEY: KEY itself if it is a directory
+     *  path ("" or ending in '/'), else the path of its parent. */
+    private static String dirOf(String key) {
+        if (key.isEmpty() || key.endsWith("/")) {
+            return key;
+        }
+        return key.substring(0, key.lastIndexOf('/') + 1);
+    }
+
+    /** The watch service. */
+    private final WatchService _service;
+    /** Watch keys of working directories, by path. */
+    private final HashMap<String, WatchKey> _dirs;
+    /** Paths of working directories, by watch key. */
+    private final HashMap<WatchKey, String> _keys;
+    /** Generation of each working directory: the clock value of the last
+     *  event in it, or 0. */
+    private final HashMap<String, Long> _generations;
+    /** Verified facts, by file name or directory path. */
+    private final HashMap<String, Object> _verified;
+    /** Stat data of the files and directories of _verified. */
+    private final HashMap<String, FileStat> _stats;
+    /** Generations of the directories of _verified as of each fact. */
+    private final HashMap<String, Long> _stamps;
+    /** Paths of watched repository directories, by watch key. */
+    private final HashMap<WatchKey, String> _repository;
+    /** Number of events seen. */
+    private long _clock;
+    /** True iff packs or the commit graph may have changed. */
+    private boolean _repositoryChanged;
+}
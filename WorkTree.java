@@ -0,0 +1,287 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/** Listing of working files, and hashing of them on a shared pool of
+ *  worker threads.  The number of workers is taken from the
+ *  gitlet.threads system property, or else the GITLET_THREADS
+ *  environment variable, and defaults to the number of available
+ *  processors.
+ *  @author Yuqiong Ji.
+ */
+class WorkTree {
+
+    /** Fewest files worth handing to the worker pool. */
+    static final int PARALLEL_THRESHOLD = 16;
+
+    /** Return the blob ids of the working files NAMES, sorted by name.
+     *  Files whose stat data match their entry in INDEX are not read;
+     *  the others are hashed in parallel and their entries in INDEX are
+     *  updated. */
+    static TreeMap<String, String> hash(Collection<String> names,
+                                        StagingArea index) {
+        return hash(names, index, null);
+    }
+
+    /** As for hash(NAMES, INDEX), but also write each file to STORE as a
+     *  blob unless STORE already holds it, reading it only once to both
+     *  hash and store it.  STORE may be null. */
+    static TreeMap<String, String> hash(Collection<String> names,
+                                        StagingArea index,
+                                        ObjectStore store) {
+        List<String> files = new ArrayList<>(names);
+        int n = files.size();
+        String[] ids = new String[n];
+        FileStat[] stats = new FileStat[n];
+        boolean[] hashed = new boolean[n];
+        boolean[] known = new boolean[n];
+        long[] stamps = new long[n];
+        IntConsumer task = i -> {
+            File file = new File(files.get(i));
+            stats[i] = FileStat.of(file);
+            if (_watcher != null) {
+                String id = (String) _watcher.verified(files.get(i),
+                                                       stats[i]);
+                if (id != null && (store == null || store.hasBlob(id))) {
+                    ids[i] = id;
+                    known[i] = true;
+                    return;
+                }
+                stamps[i] = _watcher.stamp(files.get(i));
+            }
+            ids[i] = index.cachedId(files.get(i), stats[i]);
+            if (store != null
+                && (ids[i] == null || !store.hasBlob(ids[i]))) {
+                ids[i] = store.writeBlob(file);
+                hashed[i] = true;
+            } else if (ids[i] == null) {
+                ids[i] = Utils.sha1(file);
+                hashed[i] = true;
+            }
+        };
+        forEach(n, task);
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int i = 0; i < n; i += 1) {
+            if (hashed[i]) {
+                index.cache(files.get(i), stats[i], ids[i]);
+            }
+            if (_watcher != null && !known[i]) {
+                _watcher.record(files.get(i), stamps[i], stats[i],
+                                ids[i]);
+            }
+            result.put(files.get(i), ids[i]);
+        }
+        return result;
+    }
+
+    /** Return the working files named by OPERAND, sorted: the file
+     *  itself, every file below it if it is a directory, or every file
+     *  matching it if it is a glob pattern such as "src/*.txt" or
+     *  "**.txt".  The repository directory is never included. */
+    static List<String> expand(String operand) {
+        List<String> result = new ArrayList<>();
+        String path = normalize(operand);
+        File file = new File(path);
+        if (file.isFile()) {
+            result.add(path);
+        } else if (file.isDirectory()) {
+            walk(file, path.equals(".") ? "" : path + "/", result, null,
+                 null);
+        } else if (GLOB.matcher(path).find()) {
+            int fixed = path.lastIndexOf('/', firstGlob(path));
+            String root = fixed < 0 ? "" : path.substring(0, fixed + 1);
+            PathMatcher matcher =
+                FileSystems.getDefault().getPathMatcher("glob:" + path);
+            List<String> all = new ArrayList<>();
+            walk(new File(root.isEmpty() ? "." : root), root, all, null,
+                 null);
+            for (String name : all) {
+                if (matcher.matches(Paths.get(name))) {
+                    result.add(name);
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the path of every working file, relative to the working
+     *  directory and sorted.  The listing of each directory is cached in
+     *  INDEX and reused while the directory's own stat data are
+     *  unchanged, so an unchanged directory costs one stat rather than a
+     *  read of its entries and a stat of each of them. */
+    static List<String> list(StagingArea index) {
+        List<String> result = new ArrayList<>();
+        HashSet<String> visited = new HashSet<>();
+        walk(new File("."), "", result, index, visited);
+        index.retainListings(visited);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Add to RESULT the path of every file below DIR, each made of
+     *  PREFIX followed by its path relative to DIR.  If INDEX is not
+     *  null, use and update its cached directory listings, recording
+     *  the PREFIX of each directory listed in VISITED. */
+    private static void walk(File dir, String prefix, List<String> result,
+                             StagingArea index, HashSet<String> visited) {
+        String[] entries = index == null ? null : listing(dir, prefix, index);
+        if (index == null) {
+            entries = listing(dir);
+        } else {
+            visited.add(prefix);
+        }
+        if (entries == null) {
+            return;
+        }
+        for (String entry : entries) {
+            String name = prefix + entry;
+            if (!entry.endsWith("/")) {
+                result.add(name);
+            } else if (!name.equals(Command.GIT_FOLDER.getName() + "/")) {
+                walk(new File(dir, entry), name, result, index, visited);
+            }
+        }
+    }
+
+    /** Return the entries of DIR, whose path is PREFIX, from its listing
+     *  cached in INDEX if its stat data are unchanged, else as read and
+     *  then cached.  Returns null if DIR cannot be read. */
+    private static String[] listing(File dir, String prefix,
+                                    StagingArea index) {
+        long stamp = 0;
+        FileStat stat = FileStat.of(dir);
+        if (_watcher != null) {
+            String[] known = (String[]) _watcher.verified(prefix, stat);
+            if (known != null) {
+                return known;
+            }
+            stamp = _watcher.stamp(prefix);
+        }
+        String[] result = index.cachedListing(prefix, stat);
+        if (result == null) {
+            result = listing(dir);
+            if (result != null) {
+                index.cacheListing(prefix, stat, result);
+            }
+        }
+        if (_watcher != null && result != null) {
+            _watcher.record(prefix, stamp, stat, result);
+        }
+        return result;
+    }
+
+    /** Return the names of the files in DIR, and those of its
+     *  subdirectories followed by '/', or null if DIR cannot be read. */
+    private static String[] listing(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                result.add(file.getName() + "/");
+            } else if (file.isFile()) {
+                result.add(file.getName());
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /** Delete working file NAME, then its parent directories as long as
+     *  they are left empty. */
+    static void delete(String name) {
+        File file = new File(name);
+        file.delete();
+        for (File dir = file.getParentFile(); dir != null && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+    }
+
+    /** Return PATH, a working file name as given on the command line,
+     *  relative to the working directory with '/' separators and
+     *  without "./" components or trailing separators. */
+    static String normalize(String path) {
+        String result = path.replace(File.separatorChar, '/');
+        while (result.startsWith("./")) {
+            result = result.substring(2);
+        }
+        result = result.replace("/./", "/");
+        while (result.length() > 1 && result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result.isEmpty() ? "." : result;
+    }
+
+    /** Return the position of the first glob metacharacter in PATH. */
+    private static int firstGlob(String path) {
+        Matcher m = GLOB.matcher(path);
+        m.find();
+        return m.start();
+    }
+
+    /** Use WATCHER, if not null, to keep what earlier commands of this
+     *  process verified about files and directories whose stat data are
+     *  unchanged, until it reports a change in their directory. */
+    static void watch(Watcher watcher) {
+        _watcher = watcher;
+    }
+
+    /** Run TASK for 0 .. N - 1, on the worker pool if N is large enough
+     *  to be worth it. */
+    static void forEach(int n, IntConsumer task) {
+        if (n < PARALLEL_THRESHOLD || threads() == 1) {
+            IntStream.range(0, n).forEach(task);
+        } else {
+            pool().submit(() -> IntStream.range(0, n).parallel()
+                          .forEach(task)).join();
+        }
+    }
+
+    /** Return the number of worker threads to use. */
+    static int threads() {
+        String value = System.getProperty("gitlet.threads",
+                                          System.getenv("GITLET_THREADS"));
+        try {
+            if (value != null && Integer.parseInt(value) > 0) {
+                return Integer.parseInt(value);
+            }
+        } catch (NumberFormatException excp) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Return the worker pool, creating it on first use. */
+    static synchronized ForkJoinPool pool() {
+        if (_pool == null) {
+            _pool = new ForkJoinPool(threads());
+        }
+        return _pool;
+    }
+
+    /** Matches the metacharacters of a glob pattern. */
+    private static final Pattern GLOB = Pattern.compile("[*?\\[{]");
+
+    /** Watcher of the working tree, or null. */
+    private static Watcher _watcher;
+
+    /** The worker pool, or null if not yet needed. */
+    private static ForkJoinPool _pool;
+}